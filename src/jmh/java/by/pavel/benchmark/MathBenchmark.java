@@ -0,0 +1,83 @@
+package by.pavel.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import by.pavel.math.Matrix4f;
+import by.pavel.math.Vector3f;
+import by.pavel.math.Vector4f;
+
+/**
+ * Throughput of the matrix and vector operations used per vertex and per draw.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MathBenchmark {
+
+    private static final int POINTS = 1024;
+
+    private Matrix4f a;
+    private Matrix4f b;
+    private Vector4f vector;
+    private Vector3f u;
+    private Vector3f v;
+    private final float[] points = new float[POINTS * 3];
+    private final float[] result = new float[4];
+
+    @Setup
+    public void setUp() {
+        a = Matrix4f.scale(new Vector3f(2, 2, 2))
+            .multiply(Matrix4f.rotation(new Vector3f(0.3f, 1.2f, 0)))
+            .multiply(Matrix4f.translation(new Vector3f(1, -5, 4)));
+        b = Matrix4f.lookAt(new Vector3f(0, 2, -3), new Vector3f(0, 0, 4), new Vector3f(0, 1, 0));
+        vector = new Vector4f(1, 2, 3, 1);
+        u = new Vector3f(0.3f, 0.5f, 0.8f);
+        v = new Vector3f(-0.7f, 0.2f, 0.1f);
+        Random random = new Random(42);
+        for (int i = 0; i < points.length; i++) {
+            points[i] = random.nextFloat() * 10 - 5;
+        }
+    }
+
+    @Benchmark
+    public Matrix4f matrixMultiply() {
+        return a.multiply(b);
+    }
+
+    @Benchmark
+    public Vector4f matrixVectorMultiply() {
+        return a.multiply(vector);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public float transformPoints() {
+        float sum = 0;
+        for (int i = 0; i < points.length; i += 3) {
+            a.multiply(points[i], points[i + 1], points[i + 2], 1, result);
+            sum += result[0] + result[1] + result[2];
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public Vector3f vectorCrossNormalize() {
+        return Vector3f.normalize3(u.cross(v)).plus(u.mul(v.dot(u)));
+    }
+}
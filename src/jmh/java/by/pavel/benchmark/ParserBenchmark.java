@@ -0,0 +1,51 @@
+package by.pavel.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import by.pavel.parser.MappedOBJParser;
+import by.pavel.parser.OBJArrays;
+import by.pavel.parser.OBJData;
+import by.pavel.parser.OBJParser;
+
+/**
+ * Parses the bundled models, has to run from the project directory.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+    @Param({
+        "src/main/resources/suzanne.obj",
+        "src/main/resources/models/model5.obj",
+        "src/main/resources/teapot.obj"
+    })
+    private String file;
+
+    private final OBJParser parser = new OBJParser();
+    private final MappedOBJParser mappedParser = new MappedOBJParser();
+
+    @Benchmark
+    public OBJData parseFile() {
+        return parser.parseFile(file);
+    }
+
+    @Benchmark
+    public OBJArrays parseMapped() {
+        return mappedParser.parseFile(file);
+    }
+}
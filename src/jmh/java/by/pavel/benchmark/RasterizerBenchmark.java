@@ -0,0 +1,105 @@
+package by.pavel.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import by.pavel.math.Matrix4f;
+import by.pavel.math.Vector2f;
+import by.pavel.math.Vector3f;
+import by.pavel.math.Vector3i;
+import by.pavel.math.Vector4f;
+import by.pavel.scene.Model;
+import by.pavel.scene.Screen;
+import by.pavel.shader.PixelShader;
+
+/**
+ * Fills the whole screen with a grid of triangles of the given size in pixels,
+ * so every size shades the same number of pixels and differs in per-triangle cost.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RasterizerBenchmark {
+
+    private static final int WIDTH = 800;
+    private static final int HEIGHT = 600;
+    private static final float DISTANCE = 5;
+    // pixels per world unit at DISTANCE for the 45 degree field of view of the screen
+    private static final float PIXELS_PER_UNIT = (float) (HEIGHT / 2 / Math.tan(Math.toRadians(22.5)) / DISTANCE);
+    private static final Vector4f COLOR = new Vector4f(0.8f, 0.8f, 0.8f, 1);
+    private static final PixelShader SHADER = (cameraPosition, pixelData) -> 0xffcccccc;
+
+    @Param({"4", "16", "64", "256"})
+    private int triangleSize;
+
+    @Param({"1"})
+    private int renderThreads;
+
+    private Screen screen;
+    private Model grid;
+
+    @Setup
+    public void setUp() {
+        screen = new Screen(WIDTH, HEIGHT, List.of(), renderThreads);
+        grid = createGrid(triangleSize);
+    }
+
+    @Benchmark
+    public long rasterize() {
+        screen.clear();
+        screen.drawOBJ(COLOR, grid, SHADER);
+        return screen.getFrameStats().getFragmentsWritten();
+    }
+
+    private static Model createGrid(int cellPixels) {
+        int columns = (WIDTH + cellPixels - 1) / cellPixels;
+        int rows = (HEIGHT + cellPixels - 1) / cellPixels;
+        float cell = cellPixels / PIXELS_PER_UNIT;
+        float left = -columns * cell / 2;
+        float bottom = -rows * cell / 2;
+
+        List<Vector3f> vertices = new ArrayList<>();
+        for (int row = 0; row <= rows; row++) {
+            for (int column = 0; column <= columns; column++) {
+                vertices.add(new Vector3f(left + column * cell, bottom + row * cell, DISTANCE));
+            }
+        }
+        List<Vector3f> normals = List.of(new Vector3f(0, 0, -1));
+        List<List<Vector3i>> faces = new ArrayList<>();
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                int v00 = row * (columns + 1) + column;
+                int v10 = v00 + 1;
+                int v01 = v00 + columns + 1;
+                int v11 = v01 + 1;
+                faces.add(List.of(corner(v00), corner(v01), corner(v11)));
+                faces.add(List.of(corner(v00), corner(v11), corner(v10)));
+            }
+        }
+        return new Model(
+            Matrix4f.translation(new Vector3f(0, 0, 0)),
+            Matrix4f.rotation(new Vector3f(0, 0, 0)),
+            Matrix4f.scale(new Vector3f(1, 1, 1)),
+            vertices, normals, faces, new ArrayList<Vector2f>(), "", "", "");
+    }
+
+    private static Vector3i corner(int vertex) {
+        return new Vector3i(vertex, 0, 0);
+    }
+}
@@ -0,0 +1,103 @@
+package by.pavel.benchmark;
+
+import static by.pavel.scene.ColorUtil.WHITE;
+import static by.pavel.scene.ColorUtil.rgbaVec;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import by.pavel.math.Vector3f;
+import by.pavel.scene.LightSource;
+import by.pavel.shader.CalcPhongPixelShader;
+import by.pavel.shader.PixelData;
+import by.pavel.shader.PixelShader;
+import by.pavel.shader.SpecularMapPhongPixelShader;
+
+/**
+ * Cost of shading one pixel with the Phong shaders, per pixel.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShadingBenchmark {
+
+    private static final int PIXELS = 1024;
+
+    @Param({"1", "4", "16"})
+    private int lights;
+
+    private final PixelData[] pixels = new PixelData[PIXELS];
+    private final Vector3f cameraPosition = new Vector3f(0, 2, -3);
+    private PixelShader phong;
+    private PixelShader specularMapPhong;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        List<LightSource> lightSources = new ArrayList<>();
+        for (int i = 0; i < lights; i++) {
+            lightSources.add(new LightSource(rgbaVec(WHITE),
+                new Vector3f(random.nextFloat() * 20 - 10, random.nextFloat() * 10, random.nextFloat() * 20 - 10),
+                0.25f, 0.4f));
+        }
+        phong = new CalcPhongPixelShader(lightSources, 0.7f);
+        specularMapPhong = new SpecularMapPhongPixelShader(lightSources, 0.7f);
+
+        for (int i = 0; i < PIXELS; i++) {
+            PixelData pixel = new PixelData();
+            float nx = random.nextFloat() * 2 - 1;
+            float ny = random.nextFloat();
+            float nz = random.nextFloat() * 2 - 1;
+            float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+            pixel.normalX = nx / length;
+            pixel.normalY = ny / length;
+            pixel.normalZ = nz / length;
+            pixel.positionX = random.nextFloat() * 4 - 2;
+            pixel.positionY = random.nextFloat() * 4 - 2;
+            pixel.positionZ = random.nextFloat() * 4 - 2;
+            pixel.red = random.nextFloat();
+            pixel.green = random.nextFloat();
+            pixel.blue = random.nextFloat();
+            pixel.specularCoefficient = random.nextFloat();
+            pixels[i] = pixel;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIXELS)
+    public int phong() {
+        return shade(phong);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIXELS)
+    public int specularMapPhong() {
+        return shade(specularMapPhong);
+    }
+
+    private int shade(PixelShader shader) {
+        int colors = 0;
+        for (PixelData pixel : pixels) {
+            colors ^= shader.getPixelColor(cameraPosition, pixel);
+        }
+        return colors;
+    }
+}
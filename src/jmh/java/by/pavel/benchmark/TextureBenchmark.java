@@ -0,0 +1,103 @@
+package by.pavel.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import by.pavel.texture.Texture;
+import by.pavel.texture.TextureFilter;
+import by.pavel.texture.TextureLayout;
+import by.pavel.texture.TextureWrap;
+
+/**
+ * Cost of sampling a 2048x2048 texture, per sample, in the order a rasterizer walks a surface
+ * rotated by the angle on screen: scanline after scanline of a 512x512 pixel patch, texels per pixel apart.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TextureBenchmark {
+
+    private static final int TEXTURE_SIZE = 2048;
+    private static final int PATCH_SIZE = 512;
+
+    @Param({"LINEAR", "TILED"})
+    private TextureLayout layout;
+
+    @Param({"0", "45", "90"})
+    private int angle;
+
+    @Param({"1", "4"})
+    private int texelsPerPixel;
+
+    private Texture texture;
+    // texture coordinate steps of a pixel to the right and a pixel up
+    private float uDx, vDx, uDy, vDy;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        int[] texels = new int[TEXTURE_SIZE * TEXTURE_SIZE];
+        for (int i = 0; i < texels.length; i++) {
+            texels[i] = random.nextInt();
+        }
+        texture = new Texture(TEXTURE_SIZE, TEXTURE_SIZE, texels, layout);
+        texture.setWrap(TextureWrap.REPEAT);
+        double radians = Math.toRadians(angle);
+        float step = (float) texelsPerPixel / TEXTURE_SIZE;
+        uDx = (float) Math.cos(radians) * step;
+        vDx = (float) Math.sin(radians) * step;
+        uDy = -vDx;
+        vDy = uDx;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PATCH_SIZE * PATCH_SIZE)
+    public int nearest() {
+        int sum = 0;
+        for (int py = 0; py < PATCH_SIZE; py++) {
+            float u = py * uDy;
+            float v = py * vDy;
+            for (int px = 0; px < PATCH_SIZE; px++) {
+                sum += texture.sample(u, v);
+                u += uDx;
+                v += vDx;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Bilinear samples of the full resolution level, mip levels would hide the layout.
+     */
+    @Benchmark
+    @OperationsPerInvocation(PATCH_SIZE * PATCH_SIZE)
+    public int bilinear() {
+        int sum = 0;
+        for (int py = 0; py < PATCH_SIZE; py++) {
+            float u = py * uDy;
+            float v = py * vDy;
+            for (int px = 0; px < PATCH_SIZE; px++) {
+                sum += texture.sample(u, v, 0, TextureFilter.BILINEAR);
+                u += uDx;
+                v += vDx;
+            }
+        }
+        return sum;
+    }
+}
@@ -2,17 +2,32 @@ package by.pavel;
 
 import by.pavel.parser.OBJParser;
 import by.pavel.scene.MainWindow;
+import by.pavel.scene.RenderStats;
+import by.pavel.texture.TextureFilter;
 
 public class App {
 
     public static int WIDTH = 800;
     public static int HEIGHT = 600;
+    public static int RENDER_THREADS = Integer.getInteger("renderThreads", Runtime.getRuntime().availableProcessors());
+    public static boolean DEFERRED_SHADING = Boolean.getBoolean("deferredShading");
+    public static int TARGET_FPS = Integer.getInteger("targetFps", 60);
+    public static boolean CONTINUOUS_RENDERING = Boolean.getBoolean("continuousRendering");
+    public static TextureFilter TEXTURE_FILTER = TextureFilter.valueOf(System.getProperty("textureFilter", "trilinear").toUpperCase());
+    public static boolean RENDER_STATS = Boolean.parseBoolean(System.getProperty("renderStats", "true"));
 
     public static void main(String[] args) {
         OBJParser objParser = new OBJParser();
 //        OBJData objData = objParser.parseFile("src/main/resources/suzanne.obj");
 
-        MainWindow t = new MainWindow(WIDTH, HEIGHT);
+        MainWindow t = new MainWindow(WIDTH, HEIGHT, RENDER_THREADS);
+        t.getScreen().setDeferredShading(DEFERRED_SHADING);
+        t.getScreen().setTextureFilter(TEXTURE_FILTER);
+        t.setTargetFps(TARGET_FPS);
+        t.setContinuousRendering(CONTINUOUS_RENDERING);
+        if (RENDER_STATS) {
+            RenderStats.register(t.getScreen());
+        }
         t.start();
     }
 }
@@ -0,0 +1,328 @@
+package by.pavel;
+
+import static by.pavel.scene.ColorUtil.WHITE;
+import static by.pavel.scene.ColorUtil.rgbaVec;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+
+import javax.imageio.ImageIO;
+
+import by.pavel.asset.AssetManager;
+import by.pavel.math.Matrix4f;
+import by.pavel.math.Vector3f;
+import by.pavel.math.Vector4f;
+import by.pavel.scene.Camera;
+import by.pavel.scene.LightSource;
+import by.pavel.scene.Model;
+import by.pavel.scene.Screen;
+import by.pavel.texture.TextureFilter;
+
+/**
+ * Renders frames of a scene without any window and reports frame timings.
+ * <pre>
+ * --model &lt;obj&gt;            adds a model, the options below apply to the last one
+ *   --texture &lt;png&gt;
+ *   --position &lt;x,y,z&gt;
+ *   --scale &lt;s&gt;
+ * --camera-path &lt;file&gt;     lines of "eyeX eyeY eyeZ yaw pitch", interpolated over the frames
+ * --frames &lt;n&gt;             frames to render, 100 by default
+ * --warmup &lt;n&gt;             frames rendered before timing starts, 0 by default
+ * --out &lt;dir&gt;              writes frame-NNNNN.png there, frames are discarded without it
+ * --width &lt;w&gt; --height &lt;h&gt;  800x600 by default
+ * --threads &lt;n&gt;            render threads, all processors by default
+ * --deferred               deferred shading
+ * --filter &lt;filter&gt;        nearest, bilinear or trilinear texture sampling, nearest by default
+ * </pre>
+ */
+public class HeadlessApp {
+
+    private static final Vector4f MODEL_COLOR = new Vector4f(0.8f, 0.8f, 0.8f, 1);
+
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("usage: HeadlessApp --model <obj> [--texture <png>] [--position x,y,z] [--scale s] ...");
+            System.err.println("       [--camera-path <file>] [--frames n] [--warmup n] [--out dir]");
+            System.err.println("       [--width w] [--height h] [--threads n] [--deferred]");
+            System.err.println("       [--filter nearest|bilinear|trilinear]");
+            System.exit(2);
+            return;
+        }
+        run(options);
+    }
+
+    private static void run(Options options) throws IOException {
+        List<LightSource> lightSources = List.of(
+            new LightSource(rgbaVec(WHITE), new Vector3f(0, 10, 10), 0.25f, 0.4f)
+        );
+        Screen screen = new Screen(options.width, options.height, lightSources, options.threads);
+        screen.setDeferredShading(options.deferred);
+        screen.setTextureFilter(options.filter);
+
+        long loadStart = System.nanoTime();
+        AssetManager assets = new AssetManager();
+        List<CompletableFuture<Model>> loads = new ArrayList<>();
+        for (ModelOptions modelOptions : options.models) {
+            loads.add(Model.loadAsync(
+                Matrix4f.translation(modelOptions.position),
+                Matrix4f.rotation(new Vector3f(0, 0, 0)),
+                Matrix4f.scale(new Vector3f(modelOptions.scale, modelOptions.scale, modelOptions.scale)),
+                assets,
+                modelOptions.obj,
+                modelOptions.texture,
+                null,
+                null));
+        }
+        List<Model> models = new ArrayList<>();
+        for (CompletableFuture<Model> load : loads) {
+            models.add(load.join());
+        }
+        long loadNanos = System.nanoTime() - loadStart;
+        List<float[]> cameraPath = options.cameraPath == null ? List.of() : readCameraPath(options.cameraPath);
+        if (options.out != null) {
+            Files.createDirectories(options.out);
+        }
+
+        long firstFrameNanos = 0;
+        for (int frame = 0; frame < options.warmup; frame++) {
+            moveCamera(screen.getCamera(), cameraPath, frame, options.warmup);
+            renderFrame(screen, models);
+            if (frame == 0) {
+                firstFrameNanos = System.nanoTime() - loadStart;
+            }
+        }
+        long[] frameNanos = new long[options.frames];
+        long start = System.nanoTime();
+        for (int frame = 0; frame < options.frames; frame++) {
+            moveCamera(screen.getCamera(), cameraPath, frame, options.frames);
+            long frameStart = System.nanoTime();
+            renderFrame(screen, models);
+            frameNanos[frame] = System.nanoTime() - frameStart;
+            if (firstFrameNanos == 0) {
+                firstFrameNanos = System.nanoTime() - loadStart;
+            }
+            if (options.out != null) {
+                File file = options.out.resolve(String.format("frame-%05d.png", frame)).toFile();
+                ImageIO.write(screen.getPresentedImage(), "png", file);
+            }
+        }
+        long total = System.nanoTime() - start;
+        report(frameNanos, total);
+        System.out.println("startup ms: assets " + millis(loadNanos) + ", time to first frame " + millis(firstFrameNanos));
+    }
+
+    private static void renderFrame(Screen screen, List<Model> models) {
+        screen.clear();
+        for (Model model : models) {
+            screen.drawPhong(MODEL_COLOR, model);
+        }
+        screen.resolve();
+        screen.present();
+    }
+
+    private static void moveCamera(Camera camera, List<float[]> path, int frame, int frames) {
+        if (path.isEmpty()) {
+            return;
+        }
+        float position = frames <= 1 ? 0 : (float) frame / (frames - 1) * (path.size() - 1);
+        int key = Math.min((int) position, path.size() - 1);
+        float t = position - key;
+        float[] from = path.get(key);
+        float[] to = path.get(Math.min(key + 1, path.size() - 1));
+        float[] values = new float[5];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = from[i] + (to[i] - from[i]) * t;
+        }
+        camera.setEye(new Vector3f(values[0], values[1], values[2]));
+        camera.setYaw(values[3]);
+        camera.setPitch(values[4]);
+    }
+
+    private static List<float[]> readCameraPath(Path path) throws IOException {
+        List<float[]> keys = new ArrayList<>();
+        for (String line : Files.readAllLines(path)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] values = line.split("\\s+");
+            if (values.length != 5) {
+                throw new IllegalArgumentException("Camera path line has to be \"eyeX eyeY eyeZ yaw pitch\": " + line);
+            }
+            float[] key = new float[5];
+            for (int i = 0; i < key.length; i++) {
+                key[i] = Float.parseFloat(values[i]);
+            }
+            keys.add(key);
+        }
+        return keys;
+    }
+
+    private static void report(long[] frameNanos, long totalNanos) {
+        if (frameNanos.length == 0) {
+            return;
+        }
+        System.out.println("frame,ms");
+        for (int frame = 0; frame < frameNanos.length; frame++) {
+            System.out.println(frame + "," + millis(frameNanos[frame]));
+        }
+        long[] sorted = frameNanos.clone();
+        Arrays.sort(sorted);
+        long sum = 0;
+        for (long nanos : sorted) {
+            sum += nanos;
+        }
+        System.out.println("frames: " + sorted.length);
+        System.out.println("fps: " + String.format(Locale.ROOT, "%.2f", sorted.length * 1e9 / totalNanos)
+            + " (render only " + String.format(Locale.ROOT, "%.2f", sorted.length * 1e9 / sum) + ")");
+        System.out.println("frame ms: min " + millis(sorted[0])
+            + ", mean " + millis(sum / sorted.length)
+            + ", p50 " + millis(percentile(sorted, 50))
+            + ", p95 " + millis(percentile(sorted, 95))
+            + ", p99 " + millis(percentile(sorted, 99))
+            + ", max " + millis(sorted[sorted.length - 1]));
+    }
+
+    private static long percentile(long[] sorted, int percent) {
+        int index = (int) Math.ceil(percent / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+
+    private static class ModelOptions {
+        private final String obj;
+        private String texture = "";
+        private Vector3f position = new Vector3f(0, 0, 0);
+        private float scale = 1;
+
+        private ModelOptions(String obj) {
+            this.obj = obj;
+        }
+    }
+
+    private static class Options {
+        private final List<ModelOptions> models = new ArrayList<>();
+        private Path cameraPath;
+        private int frames = 100;
+        private int warmup = 0;
+        private Path out;
+        private int width = 800;
+        private int height = 600;
+        private int threads = Runtime.getRuntime().availableProcessors();
+        private boolean deferred;
+        private TextureFilter filter = TextureFilter.NEAREST;
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "--model":
+                        options.models.add(new ModelOptions(value(args, ++i, arg)));
+                        break;
+                    case "--texture":
+                        options.lastModel(arg).texture = value(args, ++i, arg);
+                        break;
+                    case "--position":
+                        options.lastModel(arg).position = vector(value(args, ++i, arg));
+                        break;
+                    case "--scale":
+                        options.lastModel(arg).scale = Float.parseFloat(value(args, ++i, arg));
+                        break;
+                    case "--camera-path":
+                        options.cameraPath = Paths.get(value(args, ++i, arg));
+                        break;
+                    case "--frames":
+                        options.frames = positive(value(args, ++i, arg), arg, 1);
+                        break;
+                    case "--warmup":
+                        options.warmup = positive(value(args, ++i, arg), arg, 0);
+                        break;
+                    case "--out":
+                        options.out = Paths.get(value(args, ++i, arg));
+                        break;
+                    case "--width":
+                        options.width = positive(value(args, ++i, arg), arg, 1);
+                        break;
+                    case "--height":
+                        options.height = positive(value(args, ++i, arg), arg, 1);
+                        break;
+                    case "--threads":
+                        options.threads = positive(value(args, ++i, arg), arg, 1);
+                        break;
+                    case "--deferred":
+                        options.deferred = true;
+                        break;
+                    case "--filter":
+                        options.filter = filter(value(args, ++i, arg));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + arg);
+                }
+            }
+            if (options.models.isEmpty()) {
+                throw new IllegalArgumentException("At least one --model is required");
+            }
+            return options;
+        }
+
+        private ModelOptions lastModel(String option) {
+            if (models.isEmpty()) {
+                throw new IllegalArgumentException(option + " has to follow --model");
+            }
+            return models.get(models.size() - 1);
+        }
+
+        private static String value(String[] args, int i, String option) {
+            if (i >= args.length) {
+                throw new IllegalArgumentException("Missing value of " + option);
+            }
+            return args[i];
+        }
+
+        private static TextureFilter filter(String value) {
+            try {
+                return TextureFilter.valueOf(value.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown texture filter: " + value);
+            }
+        }
+
+        private static int positive(String value, String option, int min) {
+            int result;
+            try {
+                result = Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Not a number for " + option + ": " + value);
+            }
+            if (result < min) {
+                throw new IllegalArgumentException(option + " must be at least " + min + ": " + value);
+            }
+            return result;
+        }
+
+        private static Vector3f vector(String value) {
+            String[] parts = value.split(",");
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Expected x,y,z: " + value);
+            }
+            return new Vector3f(Float.parseFloat(parts[0]), Float.parseFloat(parts[1]), Float.parseFloat(parts[2]));
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package by.pavel.asset;
+
+/**
+ * Counted reference to a cached asset. The asset stays cached while any reference is
+ * not released, released assets are evicted least recently used first once the
+ * {@link AssetManager} is over its budget.
+ */
+public class Asset<T> implements AutoCloseable {
+
+    private final AssetManager manager;
+    private final AssetManager.Entry entry;
+    private final T value;
+    private boolean released;
+
+    Asset(AssetManager manager, AssetManager.Entry entry, T value) {
+        this.manager = manager;
+        this.entry = entry;
+        this.value = value;
+    }
+
+    AssetManager.Entry getEntry() {
+        return entry;
+    }
+
+    /**
+     * @return the asset, null when the file is missing
+     */
+    public T get() {
+        return value;
+    }
+
+    public boolean isMissing() {
+        return value == null;
+    }
+
+    /**
+     * Drops this reference, repeated calls do nothing.
+     */
+    public void release() {
+        if (!released) {
+            released = true;
+            if (entry != null) {
+                manager.release(entry);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        release();
+    }
+}
@@ -0,0 +1,20 @@
+package by.pavel.asset;
+
+import java.io.File;
+
+/**
+ * Loads one kind of asset from a file and estimates its memory.
+ */
+public interface AssetLoader<T> {
+
+    /**
+     * @return the asset, null when the file does not exist, which is cached as a missing asset
+     * @throws Exception when the file exists but cannot be loaded, the failure is not cached
+     */
+    T load(File file) throws Exception;
+
+    /**
+     * @return approximate heap bytes held by the asset
+     */
+    long sizeBytes(T asset);
+}
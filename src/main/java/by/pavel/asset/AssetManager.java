@@ -0,0 +1,338 @@
+package by.pavel.asset;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import by.pavel.parser.MappedOBJParser;
+import by.pavel.parser.OBJArrays;
+import by.pavel.texture.NormalMap;
+import by.pavel.texture.Texture;
+import lombok.Getter;
+
+/**
+ * Shared cache of parsed models and decoded textures, keyed by kind and canonical path,
+ * so models using the same files share one copy. Missing files are cached too and are not
+ * looked up again until {@link #invalidate}, files that fail to load are read again by the
+ * next request.
+ * <p>
+ * Assets are reference counted, see {@link Asset}. Released assets stay cached while the
+ * cache is within its budget and are evicted least recently used first beyond it; assets
+ * still referenced are never evicted, so the budget is exceeded when they alone do not fit.
+ * <p>
+ * Files load outside of the cache lock, different files load in parallel and concurrent
+ * requests of the same file share one load.
+ */
+public class AssetManager {
+
+    public static final long DEFAULT_BUDGET_BYTES = 256L << 20;
+
+    public static final AssetLoader<OBJArrays> OBJ = new AssetLoader<>() {
+        @Override
+        public OBJArrays load(File file) {
+            if (!file.isFile()) {
+                return null;
+            }
+            // large files are parsed in chunks on the common pool
+            return new MappedOBJParser(ForkJoinPool.commonPool()).parseFile(file.getPath());
+        }
+
+        @Override
+        public long sizeBytes(OBJArrays obj) {
+            return (obj.getPositions().length + obj.getUvs().length + obj.getNormals().length
+                + obj.getVertexParams().length + obj.getCorners().length + (long) obj.getFaceStarts().length) * 4;
+        }
+    };
+
+    public static final AssetLoader<Texture> TEXTURE = new AssetLoader<>() {
+        @Override
+        public Texture load(File file) throws IOException {
+            if (!file.isFile()) {
+                return null;
+            }
+            return Texture.of(readImage(file).getRaster());
+        }
+
+        @Override
+        public long sizeBytes(Texture texture) {
+            return texture.getSizeBytes();
+        }
+    };
+
+    public static final AssetLoader<NormalMap> NORMAL_MAP = new AssetLoader<>() {
+        @Override
+        public NormalMap load(File file) throws IOException {
+            if (!file.isFile()) {
+                return null;
+            }
+            return NormalMap.of(readImage(file).getRaster());
+        }
+
+        @Override
+        public long sizeBytes(NormalMap normalMap) {
+            return normalMap.getSizeBytes();
+        }
+    };
+
+    // map entry, key and bookkeeping of every cached asset, also what a missing asset costs
+    private static final long ENTRY_OVERHEAD = 128;
+
+    @Getter
+    private final long budgetBytes;
+    // access ordered, the first entries are the least recently used
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    @Getter
+    private long usedBytes;
+    @Getter
+    private long hits;
+    @Getter
+    private long misses;
+    private final int loadThreads;
+    // created on the first asynchronous request
+    private ExecutorService loadPool;
+
+    public AssetManager() {
+        this(DEFAULT_BUDGET_BYTES);
+    }
+
+    public AssetManager(long budgetBytes) {
+        // parsing and decoding also wait for the disk, a second thread keeps one core busy
+        this(budgetBytes, Math.max(2, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * @param loadThreads threads of the pool loading asynchronous requests
+     */
+    public AssetManager(long budgetBytes, int loadThreads) {
+        if (budgetBytes < 0) {
+            throw new IllegalArgumentException("Asset budget must not be negative: " + budgetBytes);
+        }
+        if (loadThreads < 1) {
+            throw new IllegalArgumentException("Load threads count must be positive: " + loadThreads);
+        }
+        this.budgetBytes = budgetBytes;
+        this.loadThreads = loadThreads;
+    }
+
+    public Asset<OBJArrays> obj(String path) {
+        return get("obj", path, OBJ);
+    }
+
+    public Asset<Texture> texture(String path) {
+        return get("texture", path, TEXTURE);
+    }
+
+    public Asset<NormalMap> normalMap(String path) {
+        return get("normal map", path, NORMAL_MAP);
+    }
+
+    public CompletableFuture<Asset<OBJArrays>> objAsync(String path) {
+        return getAsync("obj", path, OBJ);
+    }
+
+    public CompletableFuture<Asset<Texture>> textureAsync(String path) {
+        return getAsync("texture", path, TEXTURE);
+    }
+
+    public CompletableFuture<Asset<NormalMap>> normalMapAsync(String path) {
+        return getAsync("normal map", path, NORMAL_MAP);
+    }
+
+    /**
+     * Returns a new reference to the cached asset, loading it on this thread on the first request.
+     * Waits when another thread is loading the same asset.
+     * A null or empty path is a missing asset that is not cached.
+     *
+     * @param kind tells apart assets loaded differently from the same file
+     * @throws CompletionException with the exception of the loader as its cause when the file fails to load
+     */
+    public <T> Asset<T> get(String kind, String path, AssetLoader<T> loader) {
+        return request(kind, path, loader, Runnable::run).join();
+    }
+
+    /**
+     * Like {@link #get} but loads on the worker pool, assets requested together load in parallel.
+     * The future completes on the loading thread, or right away for cached assets, and fails
+     * with the exception of the loader when the file fails to load.
+     */
+    public <T> CompletableFuture<Asset<T>> getAsync(String kind, String path, AssetLoader<T> loader) {
+        return request(kind, path, loader, loadPool());
+    }
+
+    /**
+     * Returns a new reference to an asset made from another cached asset, like the mesh of a parsed
+     * obj file, cached under the path of its source. It is made again when the source has been
+     * loaded again since, and a missing source gives a missing asset that is not cached.
+     *
+     * @param loader makes the asset, it gets the file of the path
+     */
+    public <T> Asset<T> derive(String kind, String path, Asset<?> source, AssetLoader<T> loader) {
+        return request(kind, path, source, loader, Runnable::run).join();
+    }
+
+    /**
+     * Like {@link #derive} but makes the asset on the worker pool.
+     */
+    public <T> CompletableFuture<Asset<T>> deriveAsync(String kind, String path, Asset<?> source, AssetLoader<T> loader) {
+        return request(kind, path, source, loader, loadPool());
+    }
+
+    private <T> CompletableFuture<Asset<T>> request(String kind, String path, AssetLoader<T> loader, Executor executor) {
+        return request(kind, path, null, loader, executor);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<Asset<T>> request(String kind, String path, Asset<?> source, AssetLoader<T> loader,
+                                                    Executor executor) {
+        if (path == null || path.isEmpty() || source != null && source.isMissing()) {
+            return CompletableFuture.completedFuture(new Asset<>(this, null, null));
+        }
+        File file = canonicalFile(path);
+        String key = kind + ':' + file.getPath();
+        Entry from = source == null ? null : source.getEntry();
+        Entry entry;
+        boolean load = false;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry != null && entry.source != from) {
+                // made from a source that has been loaded again since
+                entries.remove(key);
+                usedBytes -= entry.sizeBytes;
+                entry.removed = true;
+                entry = null;
+            }
+            if (entry == null) {
+                misses++;
+                entry = new Entry();
+                entry.source = from;
+                entries.put(key, entry);
+                load = true;
+            } else {
+                hits++;
+            }
+            entry.references++;
+        }
+        if (load) {
+            Entry loading = entry;
+            executor.execute(() -> load(loading, file, loader));
+        }
+        Entry requested = entry;
+        return entry.loaded.thenApply(value -> new Asset<>(this, requested, (T) value));
+    }
+
+    private <T> void load(Entry entry, File file, AssetLoader<T> loader) {
+        T value;
+        long sizeBytes = ENTRY_OVERHEAD;
+        try {
+            value = loader.load(file);
+            if (value != null) {
+                sizeBytes += loader.sizeBytes(value);
+            }
+        } catch (Throwable t) {
+            // failures are not cached, they fail the waiting requests and the next request loads the file again
+            synchronized (this) {
+                entries.values().remove(entry);
+                entry.removed = true;
+            }
+            entry.loaded.completeExceptionally(t);
+            if (t instanceof Error) {
+                throw (Error) t;
+            }
+            return;
+        }
+        synchronized (this) {
+            entry.sizeBytes = sizeBytes;
+            if (!entry.removed) {
+                usedBytes += sizeBytes;
+                evict();
+            }
+        }
+        entry.loaded.complete(value);
+    }
+
+    private synchronized ExecutorService loadPool() {
+        if (loadPool == null) {
+            AtomicInteger threads = new AtomicInteger();
+            loadPool = Executors.newFixedThreadPool(loadThreads, task -> {
+                Thread thread = new Thread(task, "asset-loader-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return loadPool;
+    }
+
+    /**
+     * Forgets the cached result for the file, so the next request reads it again.
+     * Outstanding references keep the asset they hold.
+     */
+    public synchronized void invalidate(String kind, String path) {
+        Entry entry = entries.remove(kind + ':' + canonicalFile(path).getPath());
+        if (entry != null) {
+            usedBytes -= entry.sizeBytes;
+            entry.removed = true;
+        }
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    synchronized void release(Entry entry) {
+        entry.references--;
+        if (entry.references == 0 && !entry.removed) {
+            evict();
+        }
+    }
+
+    private void evict() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (usedBytes > budgetBytes && iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.references == 0 && entry.loaded.isDone()) {
+                iterator.remove();
+                usedBytes -= entry.sizeBytes;
+                entry.removed = true;
+            }
+        }
+    }
+
+    private static BufferedImage readImage(File file) throws IOException {
+        BufferedImage image = ImageIO.read(file);
+        if (image == null) {
+            throw new IOException("Unsupported image format: " + file);
+        }
+        return image;
+    }
+
+    private static File canonicalFile(String path) {
+        File file = new File(path);
+        try {
+            return file.getCanonicalFile();
+        } catch (IOException e) {
+            return file.getAbsoluteFile();
+        }
+    }
+
+    static class Entry {
+        // completes with the asset, null when missing
+        final CompletableFuture<Object> loaded = new CompletableFuture<>();
+        // the cached asset this one is made from, null for assets read from files
+        Entry source;
+        long sizeBytes;
+        int references;
+        boolean removed;
+    }
+}
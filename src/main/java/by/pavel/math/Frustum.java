@@ -0,0 +1,76 @@
+package by.pavel.math;
+
+import static java.lang.Math.sqrt;
+
+/**
+ * Clipping planes of a view-projection matrix in world space, a * x + b * y + c * z + d >= 0 inside.
+ * The near plane is clip z = 0, geometry behind it is never rasterized.
+ */
+public class Frustum {
+
+    private static final int PLANES = 6;
+
+    private final float[] planes = new float[PLANES * 4];
+    private final float[] corner = new float[4];
+
+    public Frustum(Matrix4f viewProjection) {
+        Matrix4f m = viewProjection;
+        setPlane(0, m.m30 + m.m00, m.m31 + m.m01, m.m32 + m.m02, m.m33 + m.m03);
+        setPlane(1, m.m30 - m.m00, m.m31 - m.m01, m.m32 - m.m02, m.m33 - m.m03);
+        setPlane(2, m.m30 + m.m10, m.m31 + m.m11, m.m32 + m.m12, m.m33 + m.m13);
+        setPlane(3, m.m30 - m.m10, m.m31 - m.m11, m.m32 - m.m12, m.m33 - m.m13);
+        setPlane(4, m.m20, m.m21, m.m22, m.m23);
+        setPlane(5, m.m30 - m.m20, m.m31 - m.m21, m.m32 - m.m22, m.m33 - m.m23);
+    }
+
+    private void setPlane(int plane, float a, float b, float c, float d) {
+        float length = (float) sqrt(a * a + b * b + c * c);
+        // degenerate planes, like the far plane of a projection with z == w, never cull
+        if (length == 0) {
+            a = b = c = 0;
+            d = 1;
+            length = 1;
+        }
+        planes[plane * 4] = a / length;
+        planes[plane * 4 + 1] = b / length;
+        planes[plane * 4 + 2] = c / length;
+        planes[plane * 4 + 3] = d / length;
+    }
+
+    public boolean intersectsSphere(float x, float y, float z, float radius) {
+        for (int i = 0; i < planes.length; i += 4) {
+            if (planes[i] * x + planes[i + 1] * y + planes[i + 2] * z + planes[i + 3] < -radius) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tests an object space box in clip space, it is outside when all of its corners
+     * are on the outer side of the same plane.
+     */
+    public boolean intersectsBox(Matrix4f mvp, Vector3f min, Vector3f max) {
+        int outside = 0;
+        for (int i = 0; i < 8; i++) {
+            mvp.multiply(
+                (i & 1) == 0 ? min.x : max.x,
+                (i & 2) == 0 ? min.y : max.y,
+                (i & 4) == 0 ? min.z : max.z,
+                1, corner);
+            float x = corner[0], y = corner[1], z = corner[2], w = corner[3];
+            int cornerOutside = 0;
+            if (x + w < 0) cornerOutside |= 1;
+            if (w - x < 0) cornerOutside |= 2;
+            if (y + w < 0) cornerOutside |= 4;
+            if (w - y < 0) cornerOutside |= 8;
+            if (z < 0) cornerOutside |= 16;
+            if (w - z < 0) cornerOutside |= 32;
+            outside = i == 0 ? cornerOutside : outside & cornerOutside;
+            if (outside == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -3,6 +3,8 @@ package by.pavel.math;
 import static by.pavel.math.Vector3f.negate3;
 import static by.pavel.math.Vector3f.normalize3;
 
+import java.util.Objects;
+
 public class Matrix4f {
     float m00, m01, m02, m03, m10, m11, m12, m13, m20, m21, m22, m23, m30, m31, m32, m33;
 
@@ -73,7 +75,13 @@ public class Matrix4f {
     }
 
     public Matrix4f multiply(Matrix4f other) {
-        Matrix4f result = new Matrix4f();
+        return multiply(other, new Matrix4f());
+    }
+
+    /**
+     * Like {@link #multiply(Matrix4f)} but writes into the given matrix, which must be neither of the factors.
+     */
+    public Matrix4f multiply(Matrix4f other, Matrix4f result) {
         result.m00 = m00 * other.m00 + m10 * other.m01 + m20 * other.m02 + m30 * other.m03;
         result.m01 = m01 * other.m00 + m11 * other.m01 + m21 * other.m02 + m31 * other.m03;
         result.m02 = m02 * other.m00 + m12 * other.m01 + m22 * other.m02 + m32 * other.m03;
@@ -102,6 +110,23 @@ public class Matrix4f {
         return new Vector4f(x, y, z, w);
     }
 
+    public void multiply(float x, float y, float z, float w, float[] result) {
+        result[0] = m00 * x + m01 * y + m02 * z + m03 * w;
+        result[1] = m10 * x + m11 * y + m12 * z + m13 * w;
+        result[2] = m20 * x + m21 * y + m22 * z + m23 * w;
+        result[3] = m30 * x + m31 * y + m32 * z + m33 * w;
+    }
+
+    /**
+     * Largest length a unit vector can get when transformed by this matrix, ignoring skew.
+     */
+    public float getMaxScale() {
+        float x = m00 * m00 + m10 * m10 + m20 * m20;
+        float y = m01 * m01 + m11 * m11 + m21 * m21;
+        float z = m02 * m02 + m12 * m12 + m22 * m22;
+        return (float) Math.sqrt(Math.max(Math.max(x, y), z));
+    }
+
     public static Matrix4f translation(Vector3f translationVec) {
         return new Matrix4f(
             new Vector4f(1, 0, 0, translationVec.x),
@@ -155,4 +180,23 @@ public class Matrix4f {
         return translation.multiply(lookAt);
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        Matrix4f m = (Matrix4f) o;
+        return Float.compare(m00, m.m00) == 0 && Float.compare(m01, m.m01) == 0 && Float.compare(m02, m.m02) == 0 && Float.compare(m03, m.m03) == 0
+            && Float.compare(m10, m.m10) == 0 && Float.compare(m11, m.m11) == 0 && Float.compare(m12, m.m12) == 0 && Float.compare(m13, m.m13) == 0
+            && Float.compare(m20, m.m20) == 0 && Float.compare(m21, m.m21) == 0 && Float.compare(m22, m.m22) == 0 && Float.compare(m23, m.m23) == 0
+            && Float.compare(m30, m.m30) == 0 && Float.compare(m31, m.m31) == 0 && Float.compare(m32, m.m32) == 0 && Float.compare(m33, m.m33) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(m00, m01, m02, m03, m10, m11, m12, m13, m20, m21, m22, m23, m30, m31, m32, m33);
+    }
 }
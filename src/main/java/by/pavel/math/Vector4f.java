@@ -2,6 +2,8 @@ package by.pavel.math;
 
 import static java.lang.Math.sqrt;
 
+import java.util.Objects;
+
 public class Vector4f {
 
     public float x, y, z, w = 1;
@@ -76,4 +78,21 @@ public class Vector4f {
         return new Vector4f(x * scale, y * scale, z * scale, w * scale);
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        Vector4f vector4f = (Vector4f) o;
+        return Float.compare(x, vector4f.x) == 0 && Float.compare(y, vector4f.y) == 0
+            && Float.compare(z, vector4f.z) == 0 && Float.compare(w, vector4f.w) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(x, y, z, w);
+    }
 }
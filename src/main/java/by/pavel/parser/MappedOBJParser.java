@@ -0,0 +1,480 @@
+package by.pavel.parser;
+
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import lombok.SneakyThrows;
+
+/**
+ * Reads OBJ files the way {@link OBJParser} does, straight from the bytes of the memory mapped file.
+ * Numbers are parsed without creating strings; floats that cannot be converted exactly with a
+ * double operation fall back to {@link Float#parseFloat}, so values match it bit for bit.
+ * Tokens are separated by any run of spaces and tabs, lines end with \n, \r\n or \r.
+ * <p>
+ * With a pool, files are split at line starts into chunks parsed in parallel, each chunk counts
+ * vertices from 0. Merging copies the chunks into the result arrays, also in parallel, and shifts
+ * the relative (negative) face indices by the elements of the chunks before, which gives the
+ * same result as parsing the file in one go.
+ */
+public class MappedOBJParser {
+
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    // products of a mantissa below 2^53 and a power of ten up to 1e22 are rounded once
+    private static final long EXACT_MANTISSA = 1L << 53;
+    private static final int MANTISSA_DIGITS = 18;
+    // face indices left out, like OBJParser marks them
+    private static final int MISSING = Integer.MAX_VALUE;
+    private static final int DEFAULT_CHUNK_BYTES = 4 << 20;
+    // more chunks than threads even out chunks of faces, which take longer than vertices
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final ForkJoinPool pool;
+    private final int chunkBytes;
+
+    /**
+     * Parses on the calling thread.
+     */
+    public MappedOBJParser() {
+        this(null, DEFAULT_CHUNK_BYTES);
+    }
+
+    public MappedOBJParser(ForkJoinPool pool) {
+        this(pool, DEFAULT_CHUNK_BYTES);
+    }
+
+    /**
+     * @param pool       parses chunks of the file, null parses on the calling thread
+     * @param chunkBytes smallest chunk, files below two chunks are parsed on the calling thread
+     */
+    public MappedOBJParser(ForkJoinPool pool, int chunkBytes) {
+        if (chunkBytes < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkBytes);
+        }
+        this.pool = pool;
+        this.chunkBytes = chunkBytes;
+    }
+
+    @SneakyThrows
+    public OBJArrays parseFile(String filename) {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("OBJ file is too large: " + filename);
+            }
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int chunks = pool == null ? 1 : (int) Math.min(size / chunkBytes, (long) pool.getParallelism() * CHUNKS_PER_THREAD);
+            if (chunks < 2) {
+                return new Parse(bytes, 0, (int) size).run().toArrays();
+            }
+            return parseChunks(bytes, (int) size, chunks);
+        }
+    }
+
+    private OBJArrays parseChunks(MappedByteBuffer bytes, int size, int chunkCount) throws Exception {
+        List<Callable<Parse>> tasks = new ArrayList<>(chunkCount);
+        int start = 0;
+        for (int i = 1; i <= chunkCount; i++) {
+            int end = i == chunkCount ? size : lineStart(bytes, Math.max((int) ((long) size * i / chunkCount), start), size);
+            Parse chunk = new Parse(bytes, start, end);
+            tasks.add(chunk::run);
+            start = end;
+        }
+        List<Parse> chunks = new ArrayList<>(chunkCount);
+        for (Future<Parse> future : pool.invokeAll(tasks)) {
+            chunks.add(result(future));
+        }
+        return merge(chunks);
+    }
+
+    /**
+     * Copies the chunks into one set of arrays. Faces of a chunk refer to its own vertices, relative
+     * indices were resolved against the chunk alone and are shifted by the elements before it.
+     */
+    private OBJArrays merge(List<Parse> chunks) throws Exception {
+        int count = chunks.size();
+        int[] positionStarts = new int[count + 1];
+        int[] uvStarts = new int[count + 1];
+        int[] normalStarts = new int[count + 1];
+        int[] paramStarts = new int[count + 1];
+        int[] cornerStarts = new int[count + 1];
+        int[] faceStarts = new int[count + 1];
+        for (int i = 0; i < count; i++) {
+            Parse chunk = chunks.get(i);
+            positionStarts[i + 1] = positionStarts[i] + chunk.positions.size();
+            uvStarts[i + 1] = uvStarts[i] + chunk.uvs.size();
+            normalStarts[i + 1] = normalStarts[i] + chunk.normals.size();
+            paramStarts[i + 1] = paramStarts[i] + chunk.vertexParams.size();
+            cornerStarts[i + 1] = cornerStarts[i] + chunk.corners.size();
+            faceStarts[i + 1] = faceStarts[i] + chunk.faceStarts.size() - 1;
+        }
+        OBJArrays result = new OBJArrays(new float[positionStarts[count]], new float[uvStarts[count]],
+            new float[normalStarts[count]], new float[paramStarts[count]], new int[cornerStarts[count]],
+            new int[faceStarts[count] + 1]);
+
+        List<Callable<Void>> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Parse chunk = chunks.get(i);
+            int index = i;
+            tasks.add(() -> {
+                chunk.positions.copyTo(result.getPositions(), positionStarts[index]);
+                chunk.uvs.copyTo(result.getUvs(), uvStarts[index]);
+                chunk.normals.copyTo(result.getNormals(), normalStarts[index]);
+                chunk.vertexParams.copyTo(result.getVertexParams(), paramStarts[index]);
+                int[] corners = result.getCorners();
+                int cornerStart = cornerStarts[index];
+                chunk.corners.copyTo(corners, cornerStart);
+                // corners are vertex, uv, normal, the position in the corner tells which count to add
+                int[] shifts = {positionStarts[index] / 3, uvStarts[index] / 2, normalStarts[index] / 3};
+                for (int r = 0; r < chunk.relative.size(); r++) {
+                    int corner = chunk.relative.get(r);
+                    corners[cornerStart + corner] += shifts[corner % OBJArrays.CORNER_SIZE];
+                }
+                int[] starts = result.getFaceStarts();
+                int cornerOffset = cornerStart / OBJArrays.CORNER_SIZE;
+                for (int face = 1; face < chunk.faceStarts.size(); face++) {
+                    starts[faceStarts[index] + face] = chunk.faceStarts.get(face) + cornerOffset;
+                }
+                return null;
+            });
+        }
+        for (Future<Void> future : pool.invokeAll(tasks)) {
+            result(future);
+        }
+        return result;
+    }
+
+    private static <T> T result(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+    /**
+     * @return start of the line after the one containing pos
+     */
+    private static int lineStart(MappedByteBuffer bytes, int pos, int end) {
+        while (pos < end && bytes.get(pos) != '\n' && bytes.get(pos) != '\r') {
+            pos++;
+        }
+        if (pos < end && bytes.get(pos) == '\r') {
+            pos++;
+        }
+        if (pos < end && bytes.get(pos) == '\n') {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static final class Parse {
+
+        private final MappedByteBuffer bytes;
+        private final int end;
+        private int pos;
+        // corners holding relative indices, resolved against this chunk only
+        private final IntArray relative = new IntArray();
+
+        private final FloatArray positions = new FloatArray();
+        private final FloatArray uvs = new FloatArray();
+        private final FloatArray normals = new FloatArray();
+        private final FloatArray vertexParams = new FloatArray();
+        private final IntArray corners = new IntArray();
+        private final IntArray faceStarts = new IntArray();
+        private final float[] values = new float[3];
+        private final int[] params = new int[3];
+
+        Parse(MappedByteBuffer bytes, int start, int end) {
+            this.bytes = bytes;
+            this.end = end;
+            pos = start;
+        }
+
+        Parse run() {
+            faceStarts.add(0);
+            while (pos < end) {
+                skipSpaces();
+                int start = pos;
+                int length = tokenEnd() - start;
+                pos = start + length;
+                if (length > 0 && bytes.get(start) != '#') {
+                    if (length == 1 && bytes.get(start) == 'v') {
+                        readValues(3);
+                        positions.add(values, 3);
+                    } else if (length == 2 && bytes.get(start) == 'v' && bytes.get(start + 1) == 't') {
+                        readValues(3);
+                        uvs.add(values, 2);
+                    } else if (length == 2 && bytes.get(start) == 'v' && bytes.get(start + 1) == 'n') {
+                        readValues(3);
+                        normals.add(values, 3);
+                    } else if (length == 2 && bytes.get(start) == 'v' && bytes.get(start + 1) == 'p') {
+                        readValues(3);
+                        vertexParams.add(values, 3);
+                    } else if (length == 1 && bytes.get(start) == 'f') {
+                        readFace();
+                    }
+                }
+                skipLine();
+            }
+            return this;
+        }
+
+        OBJArrays toArrays() {
+            return new OBJArrays(positions.toArray(), uvs.toArray(), normals.toArray(), vertexParams.toArray(),
+                corners.toArray(), faceStarts.toArray());
+        }
+
+        /**
+         * Reads up to count floats of the line into values, missing ones are 0, extra ones are ignored.
+         */
+        private void readValues(int count) {
+            Arrays.fill(values, 0);
+            for (int i = 0; i < count; i++) {
+                skipSpaces();
+                int start = pos;
+                pos = tokenEnd();
+                if (pos == start) {
+                    return;
+                }
+                values[i] = parseFloat(start, pos);
+            }
+        }
+
+        /**
+         * Corners are position/texture/normal with optional parts, negative indices count back
+         * from the last element read so far.
+         */
+        private void readFace() {
+            int vertexCount = positions.size() / 3;
+            int uvCount = uvs.size() / 2;
+            int normalCount = normals.size() / 3;
+            while (true) {
+                skipSpaces();
+                int start = pos;
+                pos = tokenEnd();
+                if (pos == start) {
+                    break;
+                }
+                int[] params = this.params;
+                Arrays.fill(params, MISSING);
+                int index = 0;
+                int number = 0;
+                boolean negative = false;
+                for (int i = start; i < pos; i++) {
+                    byte b = bytes.get(i);
+                    if (b == '-') {
+                        negative = true;
+                    } else if (b >= '0' && b <= '9') {
+                        number = number * 10 + (b - '0');
+                    } else {
+                        params[index] = negative ? -number : number;
+                        number = 0;
+                        negative = false;
+                        index++;
+                        while (i + 1 < pos && bytes.get(i + 1) == '/') {
+                            i++;
+                            index++;
+                        }
+                    }
+                }
+                params[index] = negative ? -number : number;
+                for (int i = 0; i < OBJArrays.CORNER_SIZE; i++) {
+                    if (params[i] < 0) {
+                        relative.add(corners.size() + i);
+                    }
+                }
+                int vertex = params[0] < 0 ? params[0] + vertexCount + 1 : params[0];
+                int uv = params[1] < 0 ? params[1] + uvCount + 1 : params[1];
+                int normal = params[2] < 0 ? params[2] + normalCount + 1 : params[2];
+                corners.add(vertex - 1);
+                corners.add(uv - 1);
+                corners.add(normal - 1);
+            }
+            faceStarts.add(corners.size() / OBJArrays.CORNER_SIZE);
+        }
+
+        private float parseFloat(int start, int end) {
+            int i = start;
+            boolean negative = false;
+            byte b = bytes.get(i);
+            if (b == '-' || b == '+') {
+                negative = b == '-';
+                i++;
+            }
+            long mantissa = 0;
+            int digits = 0;
+            int exponent = 0;
+            boolean anyDigits = false;
+            boolean truncated = false;
+            boolean fraction = false;
+            for (; i < end; i++) {
+                b = bytes.get(i);
+                if (b >= '0' && b <= '9') {
+                    anyDigits = true;
+                    if (digits < MANTISSA_DIGITS) {
+                        mantissa = mantissa * 10 + (b - '0');
+                        if (mantissa != 0) {
+                            digits++;
+                        }
+                        if (fraction) {
+                            exponent--;
+                        }
+                    } else {
+                        truncated |= b != '0';
+                        if (!fraction) {
+                            exponent++;
+                        }
+                    }
+                } else if (b == '.' && !fraction) {
+                    fraction = true;
+                } else {
+                    break;
+                }
+            }
+            if (anyDigits && i < end && (bytes.get(i) == 'e' || bytes.get(i) == 'E')) {
+                i++;
+                boolean negativeExponent = false;
+                if (i < end && (bytes.get(i) == '-' || bytes.get(i) == '+')) {
+                    negativeExponent = bytes.get(i) == '-';
+                    i++;
+                }
+                int value = 0;
+                int exponentStart = i;
+                for (; i < end && bytes.get(i) >= '0' && bytes.get(i) <= '9' && value < 10000; i++) {
+                    value = value * 10 + (bytes.get(i) - '0');
+                }
+                if (i == exponentStart) {
+                    return slowParseFloat(start, end);
+                }
+                exponent += negativeExponent ? -value : value;
+            }
+            if (!anyDigits || i != end || truncated) {
+                return slowParseFloat(start, end);
+            }
+            if (mantissa == 0) {
+                return negative ? -0f : 0f;
+            }
+            if (mantissa >= EXACT_MANTISSA || exponent < -22 || exponent > 22) {
+                return slowParseFloat(start, end);
+            }
+            double value = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+            float result = (float) value;
+            if (result != value) {
+                // rounding the double again is only wrong when it lies right between two floats
+                float other = value > result ? Math.nextUp(result) : Math.nextDown(result);
+                if (((double) result + other) / 2 == value || Float.isInfinite(result)) {
+                    return slowParseFloat(start, end);
+                }
+            }
+            return negative ? -result : result;
+        }
+
+        private float slowParseFloat(int start, int end) {
+            byte[] token = new byte[end - start];
+            for (int i = 0; i < token.length; i++) {
+                token[i] = bytes.get(start + i);
+            }
+            return Float.parseFloat(new String(token, StandardCharsets.US_ASCII));
+        }
+
+        private void skipSpaces() {
+            while (pos < end) {
+                byte b = bytes.get(pos);
+                if (b != ' ' && b != '\t') {
+                    return;
+                }
+                pos++;
+            }
+        }
+
+        private int tokenEnd() {
+            int i = pos;
+            while (i < end) {
+                byte b = bytes.get(i);
+                if (b == ' ' || b == '\t' || b == '\n' || b == '\r') {
+                    break;
+                }
+                i++;
+            }
+            return i;
+        }
+
+        private void skipLine() {
+            while (pos < end && bytes.get(pos) != '\n' && bytes.get(pos) != '\r') {
+                pos++;
+            }
+            if (pos < end && bytes.get(pos) == '\r') {
+                pos++;
+            }
+            if (pos < end && bytes.get(pos) == '\n') {
+                pos++;
+            }
+        }
+    }
+
+    private static final class FloatArray {
+        private float[] values = new float[1024];
+        private int size;
+
+        void add(float[] source, int count) {
+            if (size + count > values.length) {
+                values = Arrays.copyOf(values, Math.max(values.length * 2, size + count));
+            }
+            System.arraycopy(source, 0, values, size, count);
+            size += count;
+        }
+
+        int size() {
+            return size;
+        }
+
+        float[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+
+        void copyTo(float[] target, int offset) {
+            System.arraycopy(values, 0, target, offset, size);
+        }
+    }
+
+    private static final class IntArray {
+        private int[] values = new int[1024];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+
+        void copyTo(int[] target, int offset) {
+            System.arraycopy(values, 0, target, offset, size);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package by.pavel.parser;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.IntFunction;
+
+import by.pavel.math.Vector2f;
+import by.pavel.math.Vector3f;
+import by.pavel.math.Vector3i;
+import by.pavel.math.Vector4f;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * OBJ file contents in flat arrays. Face corners are three ints each: position, texture and
+ * normal index, 0-based like in {@link OBJData}, so a missing index is Integer.MAX_VALUE - 1.
+ * Face i has corners faceStarts[i] until faceStarts[i + 1].
+ */
+@Getter
+@RequiredArgsConstructor
+public class OBJArrays {
+
+    public static final int CORNER_SIZE = 3;
+
+    // xyz per vertex
+    private final float[] positions;
+    // uv per texture vertex
+    private final float[] uvs;
+    // xyz per normal
+    private final float[] normals;
+    // uvw per parameter space vertex
+    private final float[] vertexParams;
+    private final int[] corners;
+    private final int[] faceStarts;
+
+    public int getVertexCount() {
+        return positions.length / 3;
+    }
+
+    public int getUvCount() {
+        return uvs.length / 2;
+    }
+
+    public int getNormalCount() {
+        return normals.length / 3;
+    }
+
+    public int getFaceCount() {
+        return faceStarts.length - 1;
+    }
+
+    /**
+     * @return read-only list views over the arrays, vectors are created on access
+     */
+    public OBJData toOBJData() {
+        return new OBJData(
+            view(getVertexCount(), i -> new Vector3f(positions[i * 3], positions[i * 3 + 1], positions[i * 3 + 2])),
+            view(getUvCount(), i -> new Vector2f(uvs[i * 2], uvs[i * 2 + 1])),
+            view(getNormalCount(), i -> new Vector3f(normals[i * 3], normals[i * 3 + 1], normals[i * 3 + 2])),
+            view(vertexParams.length / 3,
+                i -> new Vector4f(vertexParams[i * 3], vertexParams[i * 3 + 1], vertexParams[i * 3 + 2])),
+            view(getFaceCount(), face -> view(faceStarts[face + 1] - faceStarts[face], corner -> {
+                int c = (faceStarts[face] + corner) * CORNER_SIZE;
+                return new Vector3i(corners[c], corners[c + 1], corners[c + 2]);
+            })));
+    }
+
+    private static <T> List<T> view(int size, IntFunction<T> element) {
+        return new AbstractList<>() {
+            @Override
+            public T get(int index) {
+                return element.apply(Objects.checkIndex(index, size));
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+}
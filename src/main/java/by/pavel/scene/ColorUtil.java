@@ -24,10 +24,14 @@ public class ColorUtil {
     }
 
     public static int colorOf(Vector4f rgba) {
+        return colorOf(rgba.x, rgba.y, rgba.z);
+    }
+
+    public static int colorOf(float r, float g, float b) {
         return colorOf(
-            bound(255, (int) (rgba.x * 255.f)),
-            bound(255, (int) (rgba.y * 255.f)),
-            bound(255, (int) (rgba.z * 255.f)),
+            bound(255, (int) (r * 255.f)),
+            bound(255, (int) (g * 255.f)),
+            bound(255, (int) (b * 255.f)),
             255);
     }
 }
@@ -0,0 +1,60 @@
+package by.pavel.scene;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/**
+ * Bounding rectangle of changed screen pixels, y pointing up like screen coordinates.
+ * Minima are inclusive, maxima exclusive, an empty region has minX >= maxX.
+ */
+class DirtyRegion {
+
+    int minX, minY, maxX, maxY;
+
+    boolean isEmpty() {
+        return minX >= maxX || minY >= maxY;
+    }
+
+    void clear() {
+        minX = minY = maxX = maxY = 0;
+    }
+
+    void set(DirtyRegion other) {
+        minX = other.minX;
+        minY = other.minY;
+        maxX = other.maxX;
+        maxY = other.maxY;
+    }
+
+    /**
+     * Adds a rectangle, clamped to a screen of the given size.
+     */
+    void add(int minX, int minY, int maxX, int maxY, int width, int height) {
+        minX = max(minX, 0);
+        minY = max(minY, 0);
+        maxX = min(maxX, width);
+        maxY = min(maxY, height);
+        if (minX >= maxX || minY >= maxY) {
+            return;
+        }
+        if (isEmpty()) {
+            this.minX = minX;
+            this.minY = minY;
+            this.maxX = maxX;
+            this.maxY = maxY;
+        } else {
+            this.minX = min(this.minX, minX);
+            this.minY = min(this.minY, minY);
+            this.maxX = max(this.maxX, maxX);
+            this.maxY = max(this.maxY, maxY);
+        }
+    }
+
+    void add(DirtyRegion other, int width, int height) {
+        add(other.minX, other.minY, other.maxX, other.maxY, width, height);
+    }
+
+    boolean intersects(int minX, int minY, int maxX, int maxY) {
+        return minX < this.maxX && this.minX < maxX && minY < this.maxY && this.minY < maxY;
+    }
+}
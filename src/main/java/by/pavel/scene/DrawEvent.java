@@ -0,0 +1,40 @@
+package by.pavel.scene;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("by.pavel.Draw")
+@Label("Draw")
+@Category({"WorseGameEngine", "Rendering"})
+@Description("One draw call, from culling until its pixels are written")
+class DrawEvent extends Event {
+
+    private static final EventType TYPE = EventType.getEventType(DrawEvent.class);
+    // handed out while the event is disabled, so draws do not allocate
+    private static final DrawEvent DISABLED = new DrawEvent();
+
+    @Label("Instances")
+    int instances;
+
+    @Label("Mesh Triangles")
+    int meshTriangles;
+
+    @Label("Visible Instances")
+    int visibleInstances;
+
+    /**
+     * Starts timing a draw, {@link #commit()} ends it. Does not record anything while the event is disabled.
+     */
+    static DrawEvent begin(int instances, int meshTriangles) {
+        DrawEvent event = TYPE.isEnabled() ? new DrawEvent() : DISABLED;
+        event.instances = instances;
+        event.meshTriangles = meshTriangles;
+        event.visibleInstances = 0;
+        event.begin();
+        return event;
+    }
+}
@@ -0,0 +1,66 @@
+package by.pavel.scene;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+import lombok.Getter;
+
+/**
+ * Colour and depth targets of the screen. Colour is written straight into the int[] behind the
+ * image, so nothing has to be copied or converted before presenting it.
+ * Colour rows go top to bottom like in the image, depth rows go bottom to top like screen y.
+ */
+public class FrameBuffer {
+
+    public static final int CLEAR_COLOR = 0xff000000;
+
+    @Getter
+    private final int width;
+    @Getter
+    private final int height;
+    @Getter
+    private final BufferedImage image;
+
+    final int[] pixels;
+    final float[] depth;
+    // number of the frame drawn into the buffer, 0 before the first one
+    long frame;
+
+    public FrameBuffer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        depth = new float[width * height];
+    }
+
+    public void clear() {
+        clearColor(CLEAR_COLOR);
+        clearDepth(Float.POSITIVE_INFINITY);
+    }
+
+    public void clearColor(int color) {
+        Arrays.fill(pixels, color);
+    }
+
+    public void clearDepth(float value) {
+        Arrays.fill(depth, value);
+    }
+
+    public void setPixel(int x, int y, int color) {
+        pixels[colorIndex(x, y)] = color;
+    }
+
+    public int getPixel(int x, int y) {
+        return pixels[colorIndex(x, y)];
+    }
+
+    public float getDepth(int x, int y) {
+        return depth[y * width + x];
+    }
+
+    int colorIndex(int x, int y) {
+        return (height - 1 - y) * width + x;
+    }
+}
@@ -0,0 +1,59 @@
+package by.pavel.scene;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("by.pavel.Frame")
+@Label("Frame")
+@Category({"WorseGameEngine", "Rendering"})
+@Description("Frame from clearing the screen until it is presented, with its counters")
+class FrameEvent extends Event {
+
+    private static final EventType TYPE = EventType.getEventType(FrameEvent.class);
+    // handed out while the event is disabled, so frames do not allocate
+    private static final FrameEvent DISABLED = new FrameEvent();
+
+    @Label("Triangles Submitted")
+    long trianglesSubmitted;
+
+    @Label("Triangles Backfacing")
+    long trianglesBackfacing;
+
+    @Label("Triangles Near Clipped")
+    long trianglesNearClipped;
+
+    @Label("Triangles Occluded")
+    long trianglesOccluded;
+
+    @Label("Pixels Tested")
+    long pixelsTested;
+
+    @Label("Fragments Written")
+    long fragmentsWritten;
+
+    @Label("Pixels Shaded")
+    long pixelsShaded;
+
+    /**
+     * Starts timing a frame, {@link #commit()} ends it. Does not record anything while the event is disabled.
+     */
+    static FrameEvent start() {
+        FrameEvent event = TYPE.isEnabled() ? new FrameEvent() : DISABLED;
+        event.begin();
+        return event;
+    }
+
+    void set(FrameStats stats) {
+        trianglesSubmitted = stats.getTrianglesSubmitted();
+        trianglesBackfacing = stats.getTrianglesBackfacing();
+        trianglesNearClipped = stats.getTrianglesNearClipped();
+        trianglesOccluded = stats.getTrianglesOccluded();
+        pixelsTested = stats.getPixelsTested();
+        fragmentsWritten = stats.getFragmentsWritten();
+        pixelsShaded = stats.getPixelsShaded();
+    }
+}
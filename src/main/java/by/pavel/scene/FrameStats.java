@@ -0,0 +1,79 @@
+package by.pavel.scene;
+
+import lombok.Getter;
+
+/**
+ * Counters of the frame being drawn, reset by {@link Screen#clear()}.
+ */
+@Getter
+public class FrameStats {
+
+    // triangles of the drawn meshes, and those dropped for facing away or crossing the near plane
+    private long trianglesSubmitted;
+    private long trianglesBackfacing;
+    private long trianglesNearClipped;
+    // pixels inside of triangles that went through the depth test
+    private long pixelsTested;
+    // fragments that passed the depth test
+    private long fragmentsWritten;
+    // shader invocations
+    private long pixelsShaded;
+    // draws outside of the view frustum
+    private long modelsCulled;
+    // draws and triangles skipped by the hierarchical z-buffer
+    private long modelsOccluded;
+    private long trianglesOccluded;
+    // the static layer was restored instead of drawing static models
+    private boolean staticLayerRestored;
+
+    void reset() {
+        trianglesSubmitted = 0;
+        trianglesBackfacing = 0;
+        trianglesNearClipped = 0;
+        pixelsTested = 0;
+        fragmentsWritten = 0;
+        pixelsShaded = 0;
+        modelsCulled = 0;
+        modelsOccluded = 0;
+        trianglesOccluded = 0;
+        staticLayerRestored = false;
+    }
+
+    void addCulledModel() {
+        modelsCulled++;
+    }
+
+    void addOccludedModel() {
+        modelsOccluded++;
+    }
+
+    void addOccludedTriangle() {
+        trianglesOccluded++;
+    }
+
+    void setStaticLayerRestored() {
+        staticLayerRestored = true;
+    }
+
+    /**
+     * Called once per set up mesh copy, copies of an instanced draw may be set up concurrently.
+     */
+    synchronized void addTriangles(int submitted, int backfacing, int nearClipped) {
+        trianglesSubmitted += submitted;
+        trianglesBackfacing += backfacing;
+        trianglesNearClipped += nearClipped;
+    }
+
+    void addFragments(long pixelsTested, long fragmentsWritten, long pixelsShaded) {
+        this.pixelsTested += pixelsTested;
+        this.fragmentsWritten += fragmentsWritten;
+        this.pixelsShaded += pixelsShaded;
+    }
+
+    /**
+     * Shader invocations saved by deferred shading, always 0 in forward mode.
+     */
+    public long getOverdrawAvoided() {
+        return fragmentsWritten - pixelsShaded;
+    }
+}
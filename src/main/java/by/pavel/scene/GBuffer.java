@@ -0,0 +1,79 @@
+package by.pavel.scene;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import by.pavel.shader.PixelData;
+import by.pavel.shader.PixelShader;
+
+/**
+ * Surface attributes of the closest fragment of every pixel, stored as struct of arrays.
+ * Pixels keep the index of the shader that has to light them, -1 means nothing was drawn.
+ */
+class GBuffer {
+
+    private final List<PixelShader> shaders = new ArrayList<>();
+
+    final int[] shader;
+    final float[] normalX, normalY, normalZ;
+    final float[] positionX, positionY, positionZ;
+    final float[] red, green, blue;
+    final float[] specular;
+
+    GBuffer(int size) {
+        shader = new int[size];
+        normalX = new float[size];
+        normalY = new float[size];
+        normalZ = new float[size];
+        positionX = new float[size];
+        positionY = new float[size];
+        positionZ = new float[size];
+        red = new float[size];
+        green = new float[size];
+        blue = new float[size];
+        specular = new float[size];
+        clear();
+    }
+
+    void clear() {
+        Arrays.fill(shader, -1);
+        shaders.clear();
+    }
+
+    int register(PixelShader pixelShader) {
+        shaders.add(pixelShader);
+        return shaders.size() - 1;
+    }
+
+    PixelShader getShader(int index) {
+        return shaders.get(index);
+    }
+
+    void store(int idx, int shaderIndex, PixelData pixelData) {
+        shader[idx] = shaderIndex;
+        normalX[idx] = pixelData.normalX;
+        normalY[idx] = pixelData.normalY;
+        normalZ[idx] = pixelData.normalZ;
+        positionX[idx] = pixelData.positionX;
+        positionY[idx] = pixelData.positionY;
+        positionZ[idx] = pixelData.positionZ;
+        red[idx] = pixelData.red;
+        green[idx] = pixelData.green;
+        blue[idx] = pixelData.blue;
+        specular[idx] = pixelData.specularCoefficient;
+    }
+
+    void load(int idx, PixelData pixelData) {
+        pixelData.normalX = normalX[idx];
+        pixelData.normalY = normalY[idx];
+        pixelData.normalZ = normalZ[idx];
+        pixelData.positionX = positionX[idx];
+        pixelData.positionY = positionY[idx];
+        pixelData.positionZ = positionZ[idx];
+        pixelData.red = red[idx];
+        pixelData.green = green[idx];
+        pixelData.blue = blue[idx];
+        pixelData.specularCoefficient = specular[idx];
+    }
+}
@@ -0,0 +1,73 @@
+package by.pavel.scene;
+
+/**
+ * Steps the simulation with a fixed tick, independent of how long frames take.
+ * Every frame runs the ticks whose time has passed and renders in between the last
+ * two of them. After a stall the ticks are capped, so the simulation slows down
+ * instead of freezing the loop with a burst of ticks.
+ */
+public class GameLoop {
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    /**
+     * Fixed step of the simulation.
+     */
+    public interface Simulation {
+        void tick(float seconds);
+    }
+
+    private final Simulation simulation;
+    private final long tickNanos;
+    private final float tickSeconds;
+    private final int maxTicksPerFrame;
+
+    private boolean started;
+    private long previousTime;
+    private long accumulator;
+
+    public GameLoop(Simulation simulation, int ticksPerSecond, int maxTicksPerFrame) {
+        if (ticksPerSecond <= 0 || maxTicksPerFrame <= 0) {
+            throw new IllegalArgumentException("Ticks per second and per frame must be positive: "
+                + ticksPerSecond + ", " + maxTicksPerFrame);
+        }
+        this.simulation = simulation;
+        this.tickNanos = NANOS_PER_SECOND / ticksPerSecond;
+        this.tickSeconds = (float) tickNanos / NANOS_PER_SECOND;
+        this.maxTicksPerFrame = maxTicksPerFrame;
+    }
+
+    /**
+     * Forgets the time of the previous call, for when frames stop while there is nothing to simulate.
+     * The next call starts timing again instead of catching up with the pause.
+     */
+    public void pause() {
+        started = false;
+        accumulator = 0;
+    }
+
+    /**
+     * Runs the ticks due since the previous call.
+     *
+     * @param now {@link System#nanoTime()} of the frame
+     * @return part of the next tick already passed, from 0 to 1, to interpolate render state with
+     */
+    public float advance(long now) {
+        if (started) {
+            accumulator += now - previousTime;
+        }
+        started = true;
+        previousTime = now;
+        int ticks = 0;
+        while (accumulator >= tickNanos) {
+            if (ticks == maxTicksPerFrame) {
+                accumulator = 0;
+                break;
+            }
+            simulation.tick(tickSeconds);
+            accumulator -= tickNanos;
+            ticks++;
+        }
+        return (float) accumulator / tickNanos;
+    }
+}
@@ -46,42 +46,61 @@ public class GameState {
         board[y][x] = checker;
     }
 
+    public boolean isAnimating() {
+        return animatedChecker != null || animatedBeatenChecker != null;
+    }
+
+    /**
+     * Advances animations by one simulation tick.
+     */
+    public void tick(float seconds) {
+        if (animatedChecker != null && !animatedChecker.tick(seconds)) {
+            animatedChecker = null;
+        }
+        if (animatedBeatenChecker != null && !animatedBeatenChecker.tick(seconds)) {
+            animatedBeatenChecker = null;
+        }
+    }
+
     @Data
     public static class AnimatedChecker {
+        private static final float DURATION = 0.5f;
+
         private final Vector3f sourcePosition;
         private final Vector3f destinationPosition;
-        private Vector3f currentPosition;
         private final Checker checker;
-        private long animationStartTime;
-        private long animationEndTime;
+        // animation time in seconds after the previous and the last tick
+        private float previousTime;
+        private float time;
 
         public AnimatedChecker(Vector3f sourcePosition, Vector3f destinationPosition, Checker checker) {
             this.sourcePosition = sourcePosition;
             this.destinationPosition = destinationPosition;
             this.checker = checker;
-            currentPosition = sourcePosition;
-            animationStartTime = System.currentTimeMillis();
-            animationEndTime = System.currentTimeMillis() + 500L;
         }
 
-        public boolean nextState() {
-            long now = System.currentTimeMillis();
-            if (now > animationEndTime) {
-                return false;
-            }
+        /**
+         * @return false when the animation was over before the tick
+         */
+        public boolean tick(float seconds) {
+            previousTime = time;
+            time = Math.min(time + seconds, DURATION);
+            return previousTime < DURATION;
+        }
 
+        /**
+         * @param alpha part of the current tick passed since the last one, from 0 to 1
+         */
+        public Vector3f getPosition(float alpha) {
             Vector3f delta = destinationPosition.minus(sourcePosition);
             float dx = delta.x;
             float dz = delta.z;
 
-            float timeDelta = (now - animationStartTime) / 500.f;
+            float timeDelta = (previousTime + (time - previousTime) * alpha) / DURATION;
             float currentY = sourcePosition.y + (float) Math.sin(Math.PI * timeDelta) * 0.5f;
             float currentX = sourcePosition.x + dx * timeDelta;
             float currentZ = sourcePosition.z + dz * timeDelta;
-            currentPosition = new Vector3f(currentX, currentY, currentZ);
-            System.out.println(timeDelta);
-
-            return true;
+            return new Vector3f(currentX, currentY, currentZ);
         }
     }
 
@@ -0,0 +1,120 @@
+package by.pavel.scene;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import java.util.Arrays;
+
+/**
+ * Farthest depth of every 8x8 block of the depth buffer, and of every 64x64 tile on top of it.
+ * Anything whose nearest depth is not closer than the farthest depth of all blocks it covers
+ * would fail the depth test on every pixel and can be skipped before rasterization.
+ * Block values are always exact, tile values are refreshed after every draw and are
+ * only ever too far in between, which keeps the test conservative.
+ */
+class HierarchicalZBuffer {
+
+    static final int BLOCK_SIZE = 8;
+    static final int TILE_SIZE = 64;
+    private static final int TILE_BLOCKS = TILE_SIZE / BLOCK_SIZE;
+
+    private final int width;
+    private final int height;
+    private final int blocksX;
+    private final int blocksY;
+    private final int tilesX;
+    private final int tilesY;
+
+    final float[] blockMax;
+    private final float[] tileMax;
+    private final boolean[] tileDirty;
+
+    HierarchicalZBuffer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        blocksX = (width + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        blocksY = (height + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+        tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+        blockMax = new float[blocksX * blocksY];
+        tileMax = new float[tilesX * tilesY];
+        tileDirty = new boolean[tilesX * tilesY];
+        clear();
+    }
+
+    void clear() {
+        Arrays.fill(blockMax, Float.POSITIVE_INFINITY);
+        Arrays.fill(tileMax, Float.POSITIVE_INFINITY);
+        Arrays.fill(tileDirty, false);
+    }
+
+    /**
+     * Takes over all values of a buffer of the same size.
+     */
+    void copyFrom(HierarchicalZBuffer other) {
+        System.arraycopy(other.blockMax, 0, blockMax, 0, blockMax.length);
+        System.arraycopy(other.tileMax, 0, tileMax, 0, tileMax.length);
+        System.arraycopy(other.tileDirty, 0, tileDirty, 0, tileDirty.length);
+    }
+
+    int blockIndex(int x, int y) {
+        return y / BLOCK_SIZE * blocksX + x / BLOCK_SIZE;
+    }
+
+    /**
+     * Rescans the block containing pixel (x, y) after its depth values changed.
+     */
+    void updateBlock(float[] depth, int x, int y) {
+        int x0 = x & -BLOCK_SIZE;
+        int y0 = y & -BLOCK_SIZE;
+        int x1 = min(x0 + BLOCK_SIZE, width);
+        int y1 = min(y0 + BLOCK_SIZE, height);
+        float farthest = 0;
+        for (int py = y0; py < y1; py++) {
+            int row = py * width;
+            for (int px = x0; px < x1; px++) {
+                farthest = max(farthest, depth[row + px]);
+            }
+        }
+        blockMax[blockIndex(x, y)] = farthest;
+        tileDirty[y / TILE_SIZE * tilesX + x / TILE_SIZE] = true;
+    }
+
+    /**
+     * Recomputes the tiles whose blocks were updated, must not run concurrently with drawing.
+     */
+    void refresh() {
+        for (int tile = 0; tile < tileDirty.length; tile++) {
+            if (!tileDirty[tile]) {
+                continue;
+            }
+            tileDirty[tile] = false;
+            int bx0 = tile % tilesX * TILE_BLOCKS;
+            int by0 = tile / tilesX * TILE_BLOCKS;
+            int bx1 = min(bx0 + TILE_BLOCKS, blocksX);
+            int by1 = min(by0 + TILE_BLOCKS, blocksY);
+            float farthest = 0;
+            for (int by = by0; by < by1; by++) {
+                for (int bx = bx0; bx < bx1; bx++) {
+                    farthest = max(farthest, blockMax[by * blocksX + bx]);
+                }
+            }
+            tileMax[tile] = farthest;
+        }
+    }
+
+    /**
+     * @param minX inclusive screen bounds, have to be inside of the screen
+     * @param minZ nearest depth of the tested geometry
+     */
+    boolean isOccluded(int minX, int minY, int maxX, int maxY, float minZ) {
+        for (int tileY = minY / TILE_SIZE; tileY <= maxY / TILE_SIZE; tileY++) {
+            for (int tileX = minX / TILE_SIZE; tileX <= maxX / TILE_SIZE; tileX++) {
+                if (minZ < tileMax[tileY * tilesX + tileX]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
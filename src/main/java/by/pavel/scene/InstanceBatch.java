@@ -0,0 +1,57 @@
+package by.pavel.scene;
+
+import java.util.Arrays;
+
+import by.pavel.math.Matrix4f;
+import by.pavel.math.Vector4f;
+
+/**
+ * Model matrices, colors and object ids of the instances of one mesh drawn by
+ * {@link Screen#drawInstanced(Model, InstanceBatch, by.pavel.shader.PixelShader)}.
+ * Arrays only grow, so a batch can be cleared and refilled every frame.
+ */
+public class InstanceBatch {
+
+    private Matrix4f[] transforms = new Matrix4f[16];
+    private Vector4f[] colors = new Vector4f[16];
+    private int[] objectIds = new int[16];
+    private int size;
+
+    public void add(Matrix4f transform, Vector4f color) {
+        add(transform, color, Screen.NO_OBJECT);
+    }
+
+    public void add(Matrix4f transform, Vector4f color, int objectId) {
+        if (size == transforms.length) {
+            transforms = Arrays.copyOf(transforms, size * 2);
+            colors = Arrays.copyOf(colors, size * 2);
+            objectIds = Arrays.copyOf(objectIds, size * 2);
+        }
+        transforms[size] = transform;
+        colors[size] = color;
+        objectIds[size] = objectId;
+        size++;
+    }
+
+    public void clear() {
+        Arrays.fill(transforms, 0, size, null);
+        Arrays.fill(colors, 0, size, null);
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    Matrix4f getTransform(int instance) {
+        return transforms[instance];
+    }
+
+    Vector4f getColor(int instance) {
+        return colors[instance];
+    }
+
+    int getObjectId(int instance) {
+        return objectIds[instance];
+    }
+}
@@ -5,12 +5,15 @@ import static by.pavel.scene.ColorUtil.colorOf;
 import static by.pavel.scene.ColorUtil.rgbaVec;
 
 import java.awt.Graphics;
-import java.awt.image.BufferStrategy;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 import javax.swing.JFrame;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 
+import by.pavel.asset.AssetManager;
 import by.pavel.checker.Checker;
 import by.pavel.checker.Checker.Rank;
 import by.pavel.checker.Checker.Side;
@@ -18,12 +21,11 @@ import by.pavel.math.Matrix4f;
 import by.pavel.math.Vector2i;
 import by.pavel.math.Vector3f;
 import by.pavel.math.Vector4f;
-import by.pavel.parser.OBJData;
-import by.pavel.parser.OBJParser;
 import by.pavel.scene.GameState.AnimatedChecker;
 import by.pavel.scene.GameState.Move;
 import by.pavel.scene.listener.CameraMouseListener;
 import by.pavel.scene.listener.CheckersKeyboardListener;
+import by.pavel.scene.listener.EventForwarder;
 import by.pavel.scene.listener.KeyboardKeyListener;
 import by.pavel.scene.listener.KeyboardModelListener;
 
@@ -51,18 +53,36 @@ public class MainWindow extends JFrame {
     public static final Vector3f SQUARE_TRANSITION = new Vector3f(0, 0.01f, 0);
     private static final Matrix4f QUEEN_ROTATION = Matrix4f.rotation(new Vector3f(3.1415f, 3.1415f, 0));
     private static final Matrix4f NORMAL_ROTATION = Matrix4f.rotation(new Vector3f(0, 3.1415f, 0));
+    // checkers on the board get ids CHECKER_ID + y * 8 + x
+    private static final int CHECKER_ID = 1;
+    private static final int BOARD_ID = CHECKER_ID + 64;
+    private static final int TICKS_PER_SECOND = 120;
+    private static final int MAX_TICKS_PER_FRAME = 12;
 
     private Screen screen;
 
+    // null until loaded, the first frames are drawn without it
     private Model chessboard;
     private Model sphere;
     private Model checkerModel;
     private Model squareModel;
+    private CompletableFuture<Model> chessboardLoad;
+    private CompletableFuture<Model> sphereLoad;
+    private CompletableFuture<Model> checkerModelLoad;
+    private CompletableFuture<Model> squareModelLoad;
+    // dynamic models of this and of the previous frame, compared to find what changed
+    private InstanceBatch checkers = new InstanceBatch();
+    private InstanceBatch previousCheckers = new InstanceBatch();
+    private InstanceBatch squares = new InstanceBatch();
+    private InstanceBatch previousSquares = new InstanceBatch();
     private final JPanel imagePanel;
+    private final RenderLoop renderLoop;
+    private final GameLoop gameLoop;
     private final List<LightSource> lightSources;
     private final GameState gameState;
+    private final AssetManager assets = new AssetManager();
 
-    public MainWindow(int width, int height) {
+    public MainWindow(int width, int height, int renderThreads) {
         super("WINDOW");
         setVisible(true);
         pack();
@@ -70,142 +90,185 @@ public class MainWindow extends JFrame {
         setSize(width, height);
 
         gameState = initGameState();
+        gameLoop = new GameLoop(gameState::tick, TICKS_PER_SECOND, MAX_TICKS_PER_FRAME);
 
         initGameState();
         lightSources = List.of(
             new LightSource(rgbaVec(WHITE), new Vector3f(0, 10, 10), BOARD_CELL_SIZE, 0.4f)
         );
-        screen = new Screen(width, height, lightSources);
+        screen = new Screen(width, height, lightSources, renderThreads);
+        screen.setObjectIdBuffer(true);
         initModel();
         imagePanel = new JPanel() {
             @Override
             protected void paintComponent(Graphics g) {
                 super.paintComponent(g);
+                g.drawImage(screen.getPresentedImage(), 0, 0, width, height, null);
+            }
+        };
+        renderLoop = new RenderLoop(screen, this::renderFrame, () -> imagePanel.repaint(screen.getPresentedDamage()));
+        add(imagePanel);
+    }
 
-                screen.clear();
-
-                boolean anyHovered = false;
-                AnimatedChecker animatedChecker = gameState.getAnimatedChecker();
-                for (int y = 0; y < 8; y++) {
-                    for (int x = 0; x < 8; x++) {
-                        Checker checker = gameState.getChecker(x, y);
-                        if (checker != null) {
-                            Vector3f xDelta = CHECKER_POSITION_X_DELTA.mul(x);
-                            Vector3f zDelta = CHECKER_POSITION_Z_DELTA.mul(y);
-                            Vector4f checkerColor = getCheckerColor(checker);
-                            if (animatedChecker != null && animatedChecker.getChecker() == checker) {
-                                checkerModel.setTranslation(Matrix4f.translation(animatedChecker.getCurrentPosition()));
-                            } else {
-                                checkerModel.setTranslation(Matrix4f.translation(BASE_CHECKER_POSITION.plus(xDelta).plus(zDelta)));
-                            }
-                            if (checker.getRank().equals(Rank.QUEEN)) {
-                                checkerModel.setRotation(QUEEN_ROTATION);
-                            } else {
-                                checkerModel.setRotation(NORMAL_ROTATION);
-                            }
-                            screen.drawPhong(checkerColor, checkerModel);
-                            if (screen.isObjectSelected()) {
-                                gameState.setHoveredChecker(checker);
-                                anyHovered = true;
-                            }
-                        }
-                    }
-                }
-                if (animatedChecker != null && !animatedChecker.nextState()) {
-                    gameState.setAnimatedChecker(null);
-                }
-                if (!anyHovered) {
-                    gameState.setHoveredChecker(null);
-                }
+    public Screen getScreen() {
+        return screen;
+    }
 
-                lightSources.forEach(
-                    lightSource -> {
-                        sphere.setTranslation(Matrix4f.translation(lightSource.getPosition()));
-                        screen.drawStraight(lightSource.getColor(), sphere);
-                    }
-                );
-
-                screen.drawPhong(rgbaVec(colorOf(52, 122, 119, 255)), chessboard);
-                Vector2i hoveredCell = null;
-                if (screen.isObjectSelected()) {
-                    Vector3f xyz = screen.getSelectedObjectModelCoordinates();
-                    int x = (int) ((LEFT_DOWN_CORNER.x - xyz.x) / BOARD_CELL_SIZE);
-                    int y = (int) ((xyz.z - LEFT_DOWN_CORNER.z) / BOARD_CELL_SIZE);
-                    hoveredCell = new Vector2i(x, y);
-                }
-                gameState.setHoveredCell(hoveredCell);
-
-                for (Move move : gameState.getPossibleMoves()) {
-                    Vector2i destination = move.getDestination();
-                    squareModel.setTranslation(Matrix4f.translation(
-                        LEFT_DOWN_CORNER
-                            .plus(CHECKER_POSITION_X_DELTA.mul(destination.x + 1))
-                            .plus(CHECKER_POSITION_Z_DELTA.mul(destination.y))
-                            .plus(SQUARE_TRANSITION))
-                    );
-                    screen.drawStraight(destination.equals(hoveredCell)
-                            ? rgbaVec(colorOf(255, 0, 0, 255))
-                            : rgbaVec(colorOf(0, 255, 0, 255))
-                        , squareModel);
-                }
+    /**
+     * @param targetFps frames per second of the render thread, 0 renders as fast as possible
+     */
+    public void setTargetFps(int targetFps) {
+        renderLoop.setTargetFps(targetFps);
+    }
 
-                List<Checker> whiteBeaten = gameState.getWhiteBeaten();
-                AnimatedChecker animatedBeatenChecker = gameState.getAnimatedBeatenChecker();
-                for (int i = 0; i < whiteBeaten.size(); i++) {
-                    Checker checker = whiteBeaten.get(i);
-                    if (checker.getRank().equals(Rank.QUEEN)) {
-                        checkerModel.setRotation(QUEEN_ROTATION);
-                    } else {
-                        checkerModel.setRotation(NORMAL_ROTATION);
-                    }
-                    if (animatedBeatenChecker != null && animatedBeatenChecker.getChecker() == checker) {
-                        checkerModel.setTranslation(Matrix4f.translation(animatedBeatenChecker.getCurrentPosition()));
-                    } else {
-                        checkerModel.setTranslation(Matrix4f.translation(
-                            LEFT_DOWN_CORNER
-                                .plus(CHECKER_POSITION_X_DELTA.mul(-0.5f))
-                                .plus(CHECKER_POSITION_Z_DELTA.mul(i))
-                                .plus(SQUARE_TRANSITION))
-                        );
-                    }
+    /**
+     * @param continuous renders all the time instead of only when the scene changed
+     */
+    public void setContinuousRendering(boolean continuous) {
+        renderLoop.setContinuous(continuous);
+    }
 
-                    screen.drawPhong(getCheckerColor(checker), checkerModel);
-                }
+    private void renderFrame() {
+        float alpha = gameLoop.advance(System.nanoTime());
 
-                List<Checker> blackBeaten = gameState.getBlackBeaten();
-                for (int i = 0; i < blackBeaten.size(); i++) {
-                    Checker checker = blackBeaten.get(i);
-                    if (checker.getRank().equals(Rank.QUEEN)) {
-                        checkerModel.setRotation(QUEEN_ROTATION);
-                    } else {
-                        checkerModel.setRotation(NORMAL_ROTATION);
-                    }
-                    if (animatedBeatenChecker != null && animatedBeatenChecker.getChecker() == checker) {
-                        checkerModel.setTranslation(Matrix4f.translation(animatedBeatenChecker.getCurrentPosition()));
+        InstanceBatch batch = previousCheckers;
+        previousCheckers = checkers;
+        checkers = batch;
+        checkers.clear();
+        AnimatedChecker animatedChecker = gameState.getAnimatedChecker();
+        for (int y = 0; y < 8; y++) {
+            for (int x = 0; x < 8; x++) {
+                Checker checker = gameState.getChecker(x, y);
+                if (checker != null) {
+                    Vector3f xDelta = CHECKER_POSITION_X_DELTA.mul(x);
+                    Vector3f zDelta = CHECKER_POSITION_Z_DELTA.mul(y);
+                    Matrix4f translation;
+                    if (animatedChecker != null && animatedChecker.getChecker() == checker) {
+                        translation = Matrix4f.translation(animatedChecker.getPosition(alpha));
                     } else {
-                        checkerModel.setTranslation(Matrix4f.translation(
-                            RIGHT_UPPER_CORNER
-                                .plus(CHECKER_POSITION_X_DELTA.mul(0.5f))
-                                .plus(CHECKER_POSITION_Z_DELTA.mul(-i))
-                                .plus(SQUARE_TRANSITION))
-                        );
+                        translation = Matrix4f.translation(BASE_CHECKER_POSITION.plus(xDelta).plus(zDelta));
                     }
-                    screen.drawPhong(getCheckerColor(checker), checkerModel);
+                    checkers.add(checkerModel.instanceMatrix(getCheckerRotation(checker), translation),
+                        getCheckerColor(checker), CHECKER_ID + y * 8 + x);
                 }
+            }
+        }
+        List<Checker> whiteBeaten = gameState.getWhiteBeaten();
+        AnimatedChecker animatedBeatenChecker = gameState.getAnimatedBeatenChecker();
+        for (int i = 0; i < whiteBeaten.size(); i++) {
+            Checker checker = whiteBeaten.get(i);
+            Matrix4f translation;
+            if (animatedBeatenChecker != null && animatedBeatenChecker.getChecker() == checker) {
+                translation = Matrix4f.translation(animatedBeatenChecker.getPosition(alpha));
+            } else {
+                translation = Matrix4f.translation(
+                    LEFT_DOWN_CORNER
+                        .plus(CHECKER_POSITION_X_DELTA.mul(-0.5f))
+                        .plus(CHECKER_POSITION_Z_DELTA.mul(i))
+                        .plus(SQUARE_TRANSITION));
+            }
+            checkers.add(checkerModel.instanceMatrix(getCheckerRotation(checker), translation), getCheckerColor(checker));
+        }
+
+        List<Checker> blackBeaten = gameState.getBlackBeaten();
+        for (int i = 0; i < blackBeaten.size(); i++) {
+            Checker checker = blackBeaten.get(i);
+            Matrix4f translation;
+            if (animatedBeatenChecker != null && animatedBeatenChecker.getChecker() == checker) {
+                translation = Matrix4f.translation(animatedBeatenChecker.getPosition(alpha));
+            } else {
+                translation = Matrix4f.translation(
+                    RIGHT_UPPER_CORNER
+                        .plus(CHECKER_POSITION_X_DELTA.mul(0.5f))
+                        .plus(CHECKER_POSITION_Z_DELTA.mul(-i))
+                        .plus(SQUARE_TRANSITION));
+            }
+            checkers.add(checkerModel.instanceMatrix(getCheckerRotation(checker), translation), getCheckerColor(checker));
+        }
 
-                if (animatedBeatenChecker != null && !animatedBeatenChecker.nextState()) {
-                    gameState.setAnimatedBeatenChecker(null);
+        batch = previousSquares;
+        previousSquares = squares;
+        squares = batch;
+        squares.clear();
+        Vector2i hoveredCell = gameState.getHoveredCell();
+        for (Move move : gameState.getPossibleMoves()) {
+            Vector2i destination = move.getDestination();
+            Matrix4f translation = Matrix4f.translation(
+                LEFT_DOWN_CORNER
+                    .plus(CHECKER_POSITION_X_DELTA.mul(destination.x + 1))
+                    .plus(CHECKER_POSITION_Z_DELTA.mul(destination.y))
+                    .plus(SQUARE_TRANSITION));
+            squares.add(squareModel.instanceMatrix(squareModel.getRotation(), translation),
+                destination.equals(hoveredCell)
+                    ? rgbaVec(colorOf(255, 0, 0, 255))
+                    : rgbaVec(colorOf(0, 255, 0, 255)),
+                BOARD_ID);
+        }
+
+        // only the changed parts of the frame are redrawn while the static layer stays valid
+        screen.markChanged(checkerModel, previousCheckers, checkers);
+        screen.markChanged(squareModel, previousSquares, squares);
+        if (!screen.clearDirty()) {
+            screen.clear();
+            if (!screen.restoreStaticLayer()) {
+                if (chessboard != null) {
+                    screen.drawPhong(rgbaVec(colorOf(52, 122, 119, 255)), chessboard, BOARD_ID);
                 }
+                screen.saveStaticLayer();
+            }
+        }
 
-                screen.drawTargetCross();
-                g.drawImage(screen.getBufferedImage(), 0, 0, width, height,
-                    (img, infoflags, x, y, width1, height1) -> {
-                        paintComponent(g);
-                        return true;
-                    });
+        screen.drawPhongInstanced(checkerModel, checkers);
+
+        lightSources.forEach(
+            lightSource -> {
+                sphere.setTranslation(Matrix4f.translation(lightSource.getPosition()));
+                screen.drawStraight(lightSource.getColor(), sphere);
             }
-        };
-        add(imagePanel);
+        );
+        screen.drawStraightInstanced(squareModel, squares);
+
+        screen.resolve();
+        RenderStageEvent picking = RenderStageEvent.begin(RenderStageEvent.PICKING);
+        boolean hoverChanged = updateHovered();
+        picking.commit();
+        screen.drawTargetCross();
+
+        if (gameState.isAnimating() || hoverChanged) {
+            renderLoop.requestFrame();
+        } else {
+            gameLoop.pause();
+        }
+    }
+
+    /**
+     * Picks the object under the mouse from the frame just drawn, the next frame highlights it.
+     *
+     * @return true when the hovered checker or cell changed
+     */
+    private boolean updateHovered() {
+        Mouse mouse = Mouse.getInstance();
+        int objectId = screen.getObjectId(mouse.getX(), mouse.getY());
+        Checker hoveredChecker = null;
+        Vector2i hoveredCell = null;
+        if (objectId >= CHECKER_ID && objectId < BOARD_ID) {
+            int cell = objectId - CHECKER_ID;
+            hoveredChecker = gameState.getChecker(cell % 8, cell / 8);
+        } else if (objectId == BOARD_ID) {
+            Vector3f xyz = screen.getWorldPosition(mouse.getX(), mouse.getY());
+            int x = (int) ((LEFT_DOWN_CORNER.x - xyz.x) / BOARD_CELL_SIZE);
+            int y = (int) ((xyz.z - LEFT_DOWN_CORNER.z) / BOARD_CELL_SIZE);
+            hoveredCell = new Vector2i(x, y);
+        }
+        boolean changed = hoveredChecker != gameState.getHoveredChecker()
+            || !Objects.equals(hoveredCell, gameState.getHoveredCell());
+        gameState.setHoveredChecker(hoveredChecker);
+        gameState.setHoveredCell(hoveredCell);
+        return changed;
+    }
+
+    private static Matrix4f getCheckerRotation(Checker checker) {
+        return checker.getRank().equals(Rank.QUEEN) ? QUEEN_ROTATION : NORMAL_ROTATION;
     }
 
     private Vector4f getCheckerColor(Checker checker) {
@@ -227,77 +290,80 @@ public class MainWindow extends JFrame {
     }
 
     public void start() {
-        createBufferStrategy(1);
-        BufferStrategy bs = getBufferStrategy();
-
-        KeyboardKeyListener keyboardKeyListener = new KeyboardKeyListener(screen.getCamera());
-        addKeyListener(keyboardKeyListener);
-        CameraMouseListener cameraMouseListener = new CameraMouseListener(screen.getCamera());
+        // listeners change the scene, they run on the render thread between frames
+        addKeyListener(new EventForwarder(renderLoop, new KeyboardKeyListener(screen.getCamera())));
+        EventForwarder cameraMouseListener = new EventForwarder(renderLoop, new CameraMouseListener(screen.getCamera()));
         addMouseListener(cameraMouseListener);
         addMouseMotionListener(cameraMouseListener);
-        addKeyListener(new KeyboardModelListener(chessboard));
-        addKeyListener(new CheckersKeyboardListener(gameState));
+        addKeyListener(new EventForwarder(renderLoop, new CheckersKeyboardListener(gameState)));
 //        addKeyListener(new LightKeyListener(lightDirection));
-        while (true) {
-            repaint();
-        }
+
+        // the first frame waits for the small models only, the textured board streams in when decoded
+        sphere = sphereLoad.join();
+        checkerModel = checkerModelLoad.join();
+        squareModel = squareModelLoad.join();
+        chessboardLoad.thenAccept(model -> {
+            renderLoop.execute(() -> {
+                chessboard = model;
+                screen.invalidateStaticLayer();
+            });
+            // the window is changed on the event dispatch thread, the render thread only swaps the board in
+            SwingUtilities.invokeLater(() ->
+                addKeyListener(new EventForwarder(renderLoop, new KeyboardModelListener(model))));
+        }).exceptionally(error -> {
+            Thread thread = Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, error);
+            return null;
+        });
+        renderLoop.start();
     }
 
+    /**
+     * Starts loading the models in parallel, see {@link #start()} for when they join the scene.
+     */
     private void initModel() {
-        OBJParser parser = new OBJParser();
-        OBJData objData = parser.parseFile(MODEL_DATA);
-
-        chessboard = new Model(
-            Matrix4f.translation(new Vector3f(0, -5f, 4f)),
-            Matrix4f.rotation(ZERO_VECTOR_3F),
-            Matrix4f.scale(new Vector3f(10f, 10f, 10f)),
-            objData.getVertices(),
-            objData.getNormals(),
-            objData.getSurfaces(),
-            objData.getTextures(),
-            MODEL_TEXTURE,
-            MODEL_NORMAL_MAP,
-            MODEL_SPECULAR_MAP
-        );
-
-        OBJData sphereData = parser.parseFile("src/main/resources/sphere.obj");
-        sphere = new Model(
+        // small models first, the first frame waits for them
+        sphereLoad = Model.loadAsync(
             Matrix4f.translation(ZERO_VECTOR_3F),
             Matrix4f.rotation(ZERO_VECTOR_3F),
             Matrix4f.scale(new Vector3f(0.2f, 0.2f, 0.2f)),
-            sphereData.getVertices(),
-            sphereData.getNormals(),
-            sphereData.getSurfaces(),
-            null,
+            assets,
+            "src/main/resources/sphere.obj",
             null,
             null,
             null);
 
-        OBJData checkerData = parser.parseFile("src/main/resources/models/model4.obj");
-        checkerModel = new Model(
+        checkerModelLoad = Model.loadAsync(
             Matrix4f.translation(ZERO_VECTOR_3F),
             NORMAL_ROTATION,
             Matrix4f.scale(new Vector3f(0.005f, 0.005f, 0.005f)),
-            checkerData.getVertices(),
-            checkerData.getNormals(),
-            checkerData.getSurfaces(),
-            null,
+            assets,
+            "src/main/resources/models/model4.obj",
             null,
             null,
             null);
 
-        OBJData squareData = parser.parseFile("src/main/resources/checkers/sqare.obj");
-        squareModel = new Model(
+        squareModelLoad = Model.loadAsync(
             Matrix4f.translation(ZERO_VECTOR_3F),
             Matrix4f.rotation(ZERO_VECTOR_3F),
             Matrix4f.scale(new Vector3f(0.25f, 1.f, 0.25f)),
-            squareData.getVertices(),
-            squareData.getNormals(),
-            squareData.getSurfaces(),
-            null,
+            assets,
+            "src/main/resources/checkers/sqare.obj",
             null,
             null,
             null);
+
+        // the textured board takes longest and streams in later
+        chessboardLoad = Model.loadAsync(
+            Matrix4f.translation(new Vector3f(0, -5f, 4f)),
+            Matrix4f.rotation(ZERO_VECTOR_3F),
+            Matrix4f.scale(new Vector3f(10f, 10f, 10f)),
+            assets,
+            MODEL_DATA,
+            MODEL_TEXTURE,
+            MODEL_NORMAL_MAP,
+            MODEL_SPECULAR_MAP
+        );
     }
 
     private GameState initGameState() {
@@ -0,0 +1,165 @@
+package by.pavel.scene;
+
+import java.util.List;
+
+import by.pavel.math.Vector2f;
+import by.pavel.math.Vector3f;
+import by.pavel.math.Vector3i;
+import by.pavel.parser.OBJArrays;
+import lombok.Getter;
+
+/**
+ * Model geometry in flat arrays. Faces are triangulated as fans, every triangle corner
+ * stores position, texture and normal indices, -1 when the face has no such attribute.
+ */
+@Getter
+public class Mesh {
+
+    public static final int CORNER_SIZE = 3;
+    public static final int TRIANGLE_SIZE = 3 * CORNER_SIZE;
+
+    // parsers mark missing face attributes with MAX_VALUE, which becomes MAX_VALUE - 1 after 1-based correction
+    private static final int MISSING_INDEX = Integer.MAX_VALUE - 1;
+
+    private final float[] positions;
+    private final float[] normals;
+    private final float[] uvs;
+    private final int[] triangles;
+    private final int triangleCount;
+
+    // object space bounding box
+    private final Vector3f boundsMin;
+    private final Vector3f boundsMax;
+    // object space bounding sphere around the box center
+    private final Vector3f boundingCenter;
+    private final float boundingRadius;
+
+    public Mesh(float[] positions, float[] normals, float[] uvs, int[] triangles) {
+        this.positions = positions;
+        this.normals = normals;
+        this.uvs = uvs;
+        this.triangles = triangles;
+        triangleCount = triangles.length / TRIANGLE_SIZE;
+        boundsMin = new Vector3f(Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY);
+        boundsMax = new Vector3f(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY);
+        for (int i = 0; i < positions.length; i += 3) {
+            boundsMin.x = Math.min(boundsMin.x, positions[i]);
+            boundsMin.y = Math.min(boundsMin.y, positions[i + 1]);
+            boundsMin.z = Math.min(boundsMin.z, positions[i + 2]);
+            boundsMax.x = Math.max(boundsMax.x, positions[i]);
+            boundsMax.y = Math.max(boundsMax.y, positions[i + 1]);
+            boundsMax.z = Math.max(boundsMax.z, positions[i + 2]);
+        }
+        boundingCenter = new Vector3f(
+            (boundsMin.x + boundsMax.x) / 2,
+            (boundsMin.y + boundsMax.y) / 2,
+            (boundsMin.z + boundsMax.z) / 2);
+        float radiusSquared = 0;
+        for (int i = 0; i < positions.length; i += 3) {
+            float dx = positions[i] - boundingCenter.x;
+            float dy = positions[i + 1] - boundingCenter.y;
+            float dz = positions[i + 2] - boundingCenter.z;
+            radiusSquared = Math.max(radiusSquared, dx * dx + dy * dy + dz * dz);
+        }
+        boundingRadius = (float) Math.sqrt(radiusSquared);
+    }
+
+    public int getVertexCount() {
+        return positions.length / 3;
+    }
+
+    public int getNormalCount() {
+        return normals.length / 3;
+    }
+
+    /**
+     * @return bytes of the geometry arrays, including vertex arrays shared by {@link #of(OBJArrays)}
+     */
+    public long getSizeBytes() {
+        return (positions.length + normals.length + uvs.length + (long) triangles.length) * 4;
+    }
+
+    /**
+     * @return bytes of the triangle array, the only one a mesh made by {@link #of(OBJArrays)} owns
+     */
+    public long getTrianglesSizeBytes() {
+        return triangles.length * 4L;
+    }
+
+    public static Mesh of(List<Vector3f> vertices, List<Vector3f> normals, List<Vector2f> uvs, List<List<Vector3i>> faces) {
+        float[] positionArray = new float[vertices.size() * 3];
+        for (int i = 0; i < vertices.size(); i++) {
+            Vector3f v = vertices.get(i);
+            positionArray[i * 3] = v.x;
+            positionArray[i * 3 + 1] = v.y;
+            positionArray[i * 3 + 2] = v.z;
+        }
+        float[] normalArray = new float[normals.size() * 3];
+        for (int i = 0; i < normals.size(); i++) {
+            Vector3f n = normals.get(i);
+            normalArray[i * 3] = n.x;
+            normalArray[i * 3 + 1] = n.y;
+            normalArray[i * 3 + 2] = n.z;
+        }
+        int uvCount = uvs == null ? 0 : uvs.size();
+        float[] uvArray = new float[uvCount * 2];
+        for (int i = 0; i < uvCount; i++) {
+            Vector2f uv = uvs.get(i);
+            uvArray[i * 2] = uv.x;
+            uvArray[i * 2 + 1] = uv.y;
+        }
+
+        int triangleCount = 0;
+        for (List<Vector3i> face : faces) {
+            triangleCount += Math.max(face.size() - 2, 0);
+        }
+        int[] triangleArray = new int[triangleCount * TRIANGLE_SIZE];
+        int offset = 0;
+        for (List<Vector3i> face : faces) {
+            for (int i = 1; i < face.size() - 1; i++) {
+                offset = putCorner(triangleArray, offset, face.get(0), uvCount);
+                offset = putCorner(triangleArray, offset, face.get(i), uvCount);
+                offset = putCorner(triangleArray, offset, face.get(i + 1), uvCount);
+            }
+        }
+        return new Mesh(positionArray, normalArray, uvArray, triangleArray);
+    }
+
+    /**
+     * Shares the vertex arrays of the parsed file, they must not be changed afterwards.
+     */
+    public static Mesh of(OBJArrays obj) {
+        int[] corners = obj.getCorners();
+        int[] faceStarts = obj.getFaceStarts();
+        int uvCount = obj.getUvCount();
+        int triangleCount = 0;
+        for (int face = 0; face < obj.getFaceCount(); face++) {
+            triangleCount += Math.max(faceStarts[face + 1] - faceStarts[face] - 2, 0);
+        }
+        int[] triangleArray = new int[triangleCount * TRIANGLE_SIZE];
+        int offset = 0;
+        for (int face = 0; face < obj.getFaceCount(); face++) {
+            int first = faceStarts[face] * OBJArrays.CORNER_SIZE;
+            for (int corner = faceStarts[face] + 1; corner < faceStarts[face + 1] - 1; corner++) {
+                offset = putCorner(triangleArray, offset, corners, first, uvCount);
+                offset = putCorner(triangleArray, offset, corners, corner * OBJArrays.CORNER_SIZE, uvCount);
+                offset = putCorner(triangleArray, offset, corners, (corner + 1) * OBJArrays.CORNER_SIZE, uvCount);
+            }
+        }
+        return new Mesh(obj.getPositions(), obj.getNormals(), obj.getUvs(), triangleArray);
+    }
+
+    private static int putCorner(int[] triangles, int offset, int[] corners, int corner, int uvCount) {
+        triangles[offset] = corners[corner];
+        triangles[offset + 1] = corners[corner + 1] == MISSING_INDEX || corners[corner + 1] >= uvCount ? -1 : corners[corner + 1];
+        triangles[offset + 2] = corners[corner + 2] == MISSING_INDEX ? -1 : corners[corner + 2];
+        return offset + CORNER_SIZE;
+    }
+
+    private static int putCorner(int[] triangles, int offset, Vector3i corner, int uvCount) {
+        triangles[offset] = corner.x;
+        triangles[offset + 1] = corner.y == MISSING_INDEX || corner.y >= uvCount ? -1 : corner.y;
+        triangles[offset + 2] = corner.z == MISSING_INDEX ? -1 : corner.z;
+        return offset + CORNER_SIZE;
+    }
+}
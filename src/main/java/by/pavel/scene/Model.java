@@ -1,15 +1,26 @@
 package by.pavel.scene;
 
+import by.pavel.asset.Asset;
+import by.pavel.asset.AssetLoader;
+import by.pavel.asset.AssetManager;
 import by.pavel.math.Matrix4f;
 import by.pavel.math.Vector2f;
 import by.pavel.math.Vector3f;
 import by.pavel.math.Vector3i;
+import by.pavel.parser.OBJArrays;
+import by.pavel.parser.OBJData;
+import by.pavel.texture.NormalMap;
+import by.pavel.texture.Texture;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
 
-import java.awt.image.Raster;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import javax.imageio.ImageIO;
 
@@ -23,9 +34,14 @@ public class Model {
     private final List<Vector3f> normals;
     private final List<List<Vector3i>> faces;
     private final List<Vector2f> uvTextures;
-    private final Raster texture;
-    private final Raster normalMap;
-    private final Raster specularMap;
+    private final Texture texture;
+    private final NormalMap normalMap;
+    private final Texture specularMap;
+
+    private final Mesh mesh;
+    // cached assets the model holds references to, see release()
+    @Getter(AccessLevel.NONE)
+    private final List<Asset<?>> assets = new ArrayList<>();
 
     Matrix4f model;
 
@@ -33,8 +49,10 @@ public class Model {
         model = scale.multiply(rotation).multiply(translation);
     }
 
+    /**
+     * Reads the texture files itself, see {@link #load} for sharing them with other models.
+     */
     public Model(Matrix4f translation, Matrix4f rotation, Matrix4f scale, List<Vector3f> vertices, List<Vector3f> normals, List<List<Vector3i>> faces, List<Vector2f> uvTextures, String texturePath, String normalMapPath, String specularMapPath) {
-        Raster textureTemp;
         this.translation = translation;
         this.rotation = rotation;
         this.scale = scale;
@@ -42,20 +60,23 @@ public class Model {
         this.faces = faces;
         this.normals = normals;
         this.uvTextures = uvTextures;
+        this.mesh = Mesh.of(vertices, normals, uvTextures, faces);
+        Texture textureTemp;
         try {
-            textureTemp = ImageIO.read(new File(texturePath)).getRaster();
+            textureTemp = Texture.of(ImageIO.read(new File(texturePath)).getRaster());
         } catch (Exception e) {
             textureTemp = null;
         }
         this.texture = textureTemp;
+        NormalMap normalMapTemp;
         try {
-            textureTemp = ImageIO.read(new File(normalMapPath)).getRaster();
+            normalMapTemp = NormalMap.of(ImageIO.read(new File(normalMapPath)).getRaster());
         } catch (Exception e) {
-            textureTemp = null;
+            normalMapTemp = null;
         }
-        this.normalMap = textureTemp;
+        this.normalMap = normalMapTemp;
         try {
-            textureTemp = ImageIO.read(new File(specularMapPath)).getRaster();
+            textureTemp = Texture.of(ImageIO.read(new File(specularMapPath)).getRaster());
         } catch (Exception e) {
             textureTemp = null;
         }
@@ -63,6 +84,126 @@ public class Model {
         setModel();
     }
 
+    private Model(Matrix4f translation, Matrix4f rotation, Matrix4f scale, Asset<OBJArrays> obj, Asset<Mesh> mesh,
+                  Asset<Texture> texture, Asset<NormalMap> normalMap, Asset<Texture> specularMap) {
+        this.translation = translation;
+        this.rotation = rotation;
+        this.scale = scale;
+        OBJData data = obj.get().toOBJData();
+        this.vertices = data.getVertices();
+        this.normals = data.getNormals();
+        this.faces = data.getSurfaces();
+        this.uvTextures = data.getTextures();
+        this.mesh = mesh.get();
+        this.texture = texture.get();
+        this.normalMap = normalMap.get();
+        this.specularMap = specularMap.get();
+        assets.addAll(List.of(obj, mesh, texture, normalMap, specularMap));
+        setModel();
+    }
+
+    /**
+     * Takes the geometry and textures from the asset manager, models of the same files share them.
+     * Missing textures are left out like in the constructor, a missing obj file fails.
+     * {@link #release()} gives the assets back once the model is no longer drawn.
+     *
+     * @throws IllegalArgumentException when the obj file is missing or any file fails to load,
+     * with the failure of the file as its cause
+     */
+    public static Model load(Matrix4f translation, Matrix4f rotation, Matrix4f scale, AssetManager assets,
+                             String objPath, String texturePath, String normalMapPath, String specularMapPath) {
+        List<Asset<?>> loaded = new ArrayList<>();
+        try {
+            Asset<OBJArrays> obj = add(loaded, assets.obj(objPath));
+            Asset<Mesh> mesh = add(loaded, assets.derive("mesh", objPath, obj, meshLoader(obj.get())));
+            Asset<Texture> texture = add(loaded, assets.texture(texturePath));
+            Asset<NormalMap> normalMap = add(loaded, assets.normalMap(normalMapPath));
+            Asset<Texture> specularMap = add(loaded, assets.texture(specularMapPath));
+            return create(translation, rotation, scale, objPath, obj, mesh, texture, normalMap, specularMap);
+        } catch (CompletionException e) {
+            loaded.forEach(Asset::release);
+            throw new IllegalArgumentException("Cannot load model: " + objPath, e.getCause());
+        }
+    }
+
+    /**
+     * Like {@link #load} but parses and decodes the files in parallel on the asset loader pool.
+     * The future fails with {@link IllegalArgumentException} when the obj file is missing or any
+     * file fails to load.
+     */
+    public static CompletableFuture<Model> loadAsync(Matrix4f translation, Matrix4f rotation, Matrix4f scale,
+                                                     AssetManager assets, String objPath, String texturePath,
+                                                     String normalMapPath, String specularMapPath) {
+        CompletableFuture<Asset<OBJArrays>> obj = assets.objAsync(objPath);
+        CompletableFuture<Asset<Mesh>> mesh = obj.thenCompose(data -> assets.deriveAsync("mesh", objPath, data, meshLoader(data.get())));
+        CompletableFuture<Asset<Texture>> texture = assets.textureAsync(texturePath);
+        CompletableFuture<Asset<NormalMap>> normalMap = assets.normalMapAsync(normalMapPath);
+        CompletableFuture<Asset<Texture>> specularMap = assets.textureAsync(specularMapPath);
+        return CompletableFuture.allOf(obj, mesh, texture, normalMap, specularMap)
+            .handle((all, failure) -> {
+                if (failure != null) {
+                    // the assets that did load are given back
+                    for (CompletableFuture<? extends Asset<?>> asset : List.of(obj, mesh, texture, normalMap, specularMap)) {
+                        if (!asset.isCompletedExceptionally()) {
+                            asset.join().release();
+                        }
+                    }
+                    Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+                    throw new IllegalArgumentException("Cannot load model: " + objPath, cause);
+                }
+                return create(translation, rotation, scale, objPath, obj.join(), mesh.join(),
+                    texture.join(), normalMap.join(), specularMap.join());
+            });
+    }
+
+    private static <T> Asset<T> add(List<Asset<?>> loaded, Asset<T> asset) {
+        loaded.add(asset);
+        return asset;
+    }
+
+    private static Model create(Matrix4f translation, Matrix4f rotation, Matrix4f scale, String objPath,
+                                Asset<OBJArrays> obj, Asset<Mesh> mesh, Asset<Texture> texture,
+                                Asset<NormalMap> normalMap, Asset<Texture> specularMap) {
+        if (mesh.isMissing()) {
+            List.of(obj, mesh, texture, normalMap, specularMap).forEach(Asset::release);
+            throw new IllegalArgumentException("Cannot load model: " + objPath);
+        }
+        return new Model(translation, rotation, scale, obj, mesh, texture, normalMap, specularMap);
+    }
+
+    private static AssetLoader<Mesh> meshLoader(OBJArrays data) {
+        return new AssetLoader<>() {
+            @Override
+            public Mesh load(File file) {
+                return Mesh.of(data);
+            }
+
+            @Override
+            public long sizeBytes(Mesh mesh) {
+                // the vertex arrays are shared with the obj asset, which counts them
+                return mesh.getTrianglesSizeBytes();
+            }
+        };
+    }
+
+    /**
+     * Releases the cached assets of a model made by {@link #load} or {@link #loadAsync}.
+     * The model must not be drawn afterwards.
+     */
+    public void release() {
+        for (Asset<?> asset : assets) {
+            asset.release();
+        }
+        assets.clear();
+    }
+
+    /**
+     * Model matrix of a copy of this model with the same scale, for instanced draws.
+     */
+    public Matrix4f instanceMatrix(Matrix4f rotation, Matrix4f translation) {
+        return scale.multiply(rotation).multiply(translation);
+    }
+
     Matrix4f getModelMatrix() {
         return model;
     }
@@ -0,0 +1,34 @@
+package by.pavel.scene;
+
+import java.util.Arrays;
+
+/**
+ * Id of the object that won the depth test of every pixel and its world position.
+ * Written by draws together with depth, so any pixel can be picked after the frame.
+ */
+class ObjectIdBuffer {
+
+    final int[] ids;
+    final float[] positionX;
+    final float[] positionY;
+    final float[] positionZ;
+
+    ObjectIdBuffer(int size) {
+        ids = new int[size];
+        positionX = new float[size];
+        positionY = new float[size];
+        positionZ = new float[size];
+        clear();
+    }
+
+    void clear() {
+        Arrays.fill(ids, Screen.NO_OBJECT);
+    }
+
+    void copyFrom(ObjectIdBuffer other) {
+        System.arraycopy(other.ids, 0, ids, 0, ids.length);
+        System.arraycopy(other.positionX, 0, positionX, 0, positionX.length);
+        System.arraycopy(other.positionY, 0, positionY, 0, positionY.length);
+        System.arraycopy(other.positionZ, 0, positionZ, 0, positionZ.length);
+    }
+}
@@ -0,0 +1,147 @@
+package by.pavel.scene;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Renders frames on its own thread and presents them through the swap chain of the screen.
+ * Frames start on fixed intervals of the target frame rate, a frame that misses its interval
+ * starts the next one right away instead of rendering a burst to catch up.
+ * Tasks passed to {@link #execute(Runnable)} run on the render thread before the next frame,
+ * which keeps state shared with rendering confined to one thread.
+ * <p>
+ * Frames are rendered on demand: the loop sleeps until a frame is requested with
+ * {@link #requestFrame()}. Every task requests a frame, since input handled by tasks is what
+ * changes the scene, and the frame callback requests the next one while something still moves.
+ */
+public class RenderLoop implements Runnable, Executor {
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private final Screen screen;
+    private final Runnable renderFrame;
+    private final Runnable framePresented;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    // the scene changed since the last frame started, the first frame is always rendered
+    private final AtomicBoolean dirty = new AtomicBoolean(true);
+
+    private volatile long frameNanos;
+    private volatile boolean running;
+    private volatile boolean continuous;
+    private volatile Thread thread;
+
+    /**
+     * @param renderFrame draws one frame into the screen
+     * @param framePresented called on the render thread after every presented frame
+     */
+    public RenderLoop(Screen screen, Runnable renderFrame, Runnable framePresented) {
+        this.screen = screen;
+        this.renderFrame = renderFrame;
+        this.framePresented = framePresented;
+    }
+
+    /**
+     * @param targetFps frames per second, 0 renders as fast as possible
+     */
+    public void setTargetFps(int targetFps) {
+        if (targetFps < 0) {
+            throw new IllegalArgumentException("Target fps must not be negative: " + targetFps);
+        }
+        frameNanos = targetFps == 0 ? 0 : NANOS_PER_SECOND / targetFps;
+    }
+
+    public int getTargetFps() {
+        long frameNanos = this.frameNanos;
+        return frameNanos == 0 ? 0 : (int) (NANOS_PER_SECOND / frameNanos);
+    }
+
+    /**
+     * @param continuous renders frames all the time instead of on demand, to measure frame rates
+     */
+    public void setContinuous(boolean continuous) {
+        this.continuous = continuous;
+        requestFrame();
+    }
+
+    /**
+     * Marks the scene changed, the loop renders a frame as soon as the current one and
+     * the frame interval allow. Safe to call from any thread.
+     */
+    public void requestFrame() {
+        dirty.set(true);
+        Thread thread = this.thread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this, "render");
+        thread.start();
+    }
+
+    public synchronized void stop() throws InterruptedException {
+        if (thread == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(thread);
+        thread.join();
+        thread = null;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        tasks.add(task);
+        requestFrame();
+    }
+
+    @Override
+    public void run() {
+        long frameStart = System.nanoTime();
+        while (running) {
+            dirty.set(continuous);
+            runTasks();
+            renderFrame.run();
+            screen.present();
+            framePresented.run();
+
+            waitForRequest();
+            long frameNanos = this.frameNanos;
+            frameStart += frameNanos;
+            long now = System.nanoTime();
+            if (frameStart - now < 0) {
+                // idle or late, the next frame starts now
+                frameStart = now;
+                continue;
+            }
+            long remaining;
+            while (running && (remaining = frameStart - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(remaining);
+            }
+        }
+    }
+
+    /**
+     * Sleeps until a frame is requested, wakes up right away when it already was.
+     */
+    private void waitForRequest() {
+        while (running && !dirty.get()) {
+            LockSupport.park(this);
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package by.pavel.scene;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * Threads that run the parallel loops of a screen. The thread that starts a loop works on it too,
+ * the other threads claim indices of the loop one by one. Tasks of the threads are reused and loops
+ * wait for them on a monitor, so running a loop does not allocate once the threads have started.
+ */
+class RenderPool {
+
+    private static final AtomicInteger POOLS = new AtomicInteger();
+
+    private final ForkJoinPool pool;
+    private final Helper[] helpers;
+    private final AtomicInteger nextIndex = new AtomicInteger();
+
+    // the running loop, written before its helpers are started
+    private IntConsumer body;
+    private int count;
+    // helpers that have not finished the running loop, and the first failure of the loop, guarded by this
+    private int running;
+    private Throwable failure;
+
+    RenderPool(int threads) {
+        int pool = POOLS.incrementAndGet();
+        AtomicInteger workers = new AtomicInteger();
+        this.pool = new ForkJoinPool(threads, forkJoinPool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+            thread.setName("render-worker-" + pool + "-" + workers.incrementAndGet());
+            return thread;
+        }, null, false);
+        helpers = new Helper[threads - 1];
+        for (int i = 0; i < helpers.length; i++) {
+            helpers[i] = new Helper();
+        }
+    }
+
+    int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Runs the body for every index from 0 until count and returns when all of them are done.
+     * Loops must not be nested, and the body must not keep state of its own between indices.
+     * The first exception of the body is rethrown once every thread has left the loop.
+     */
+    void forEach(int count, IntConsumer body) {
+        int started = Math.min(helpers.length, count - 1);
+        this.body = body;
+        this.count = count;
+        nextIndex.set(0);
+        synchronized (this) {
+            running = started;
+            failure = null;
+        }
+        for (int i = 0; i < started; i++) {
+            helpers[i].reinitialize();
+            pool.execute(helpers[i]);
+        }
+        try {
+            work();
+        } catch (RuntimeException | Error e) {
+            fail(e);
+        }
+        awaitHelpers(started);
+        this.body = null;
+        Throwable failure;
+        synchronized (this) {
+            failure = this.failure;
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+    }
+
+    private void work() {
+        IntConsumer body = this.body;
+        for (int index = nextIndex.getAndIncrement(); index < count; index = nextIndex.getAndIncrement()) {
+            body.accept(index);
+        }
+    }
+
+    private synchronized void fail(Throwable t) {
+        if (failure == null) {
+            failure = t;
+        } else if (failure != t) {
+            failure.addSuppressed(t);
+        }
+        // the other threads stop claiming indices
+        nextIndex.set(count);
+    }
+
+    /**
+     * Helpers may still write the buffers of the loop until they are counted down, so a loop waits
+     * for them even when its thread is interrupted.
+     */
+    private void awaitHelpers(int started) {
+        boolean interrupted = false;
+        synchronized (this) {
+            while (running > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        // a helper counts down right before its task completes, the next loop reinitializes the task
+        for (int i = 0; i < started; i++) {
+            while (!helpers[i].isDone()) {
+                Thread.onSpinWait();
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private class Helper extends RecursiveAction {
+
+        @Override
+        protected void compute() {
+            try {
+                work();
+            } catch (RuntimeException | Error e) {
+                fail(e);
+            } finally {
+                synchronized (RenderPool.this) {
+                    if (--running == 0) {
+                        RenderPool.this.notifyAll();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package by.pavel.scene;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("by.pavel.RenderStage")
+@Label("Render Stage")
+@Category({"WorseGameEngine", "Rendering"})
+@Description("Part of a frame or of a draw spent in one stage of the pipeline")
+class RenderStageEvent extends Event {
+
+    static final String CLEAR = "clear";
+    static final String STATIC_LAYER = "static layer";
+    static final String TRANSFORM = "transform";
+    static final String SETUP = "setup";
+    static final String RASTERIZE = "rasterize";
+    static final String RESOLVE = "resolve";
+    static final String PICKING = "picking";
+    static final String PRESENT = "present";
+
+    private static final EventType TYPE = EventType.getEventType(RenderStageEvent.class);
+    // handed out while the event is disabled, so stages of every frame do not allocate
+    private static final RenderStageEvent DISABLED = new RenderStageEvent();
+
+    @Label("Stage")
+    String stage;
+
+    /**
+     * Starts timing a stage, {@link #commit()} ends it. Does not record anything while the event is disabled.
+     */
+    static RenderStageEvent begin(String stage) {
+        RenderStageEvent event = TYPE.isEnabled() ? new RenderStageEvent() : DISABLED;
+        event.stage = stage;
+        event.begin();
+        return event;
+    }
+}
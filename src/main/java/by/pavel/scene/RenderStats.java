@@ -0,0 +1,182 @@
+package by.pavel.scene;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Keeps the counters and times of the last frames in ring buffers. The render thread records
+ * a frame once it is presented, JMX clients read sums over the window at any time.
+ */
+public class RenderStats implements RenderStatsMXBean {
+
+    public static final String OBJECT_NAME = "by.pavel:type=RenderStats";
+    private static final int DEFAULT_WINDOW = 240;
+
+    private static final int TRIANGLES_SUBMITTED = 0;
+    private static final int TRIANGLES_BACKFACING = 1;
+    private static final int TRIANGLES_NEAR_CLIPPED = 2;
+    private static final int TRIANGLES_OCCLUDED = 3;
+    private static final int PIXELS_TESTED = 4;
+    private static final int FRAGMENTS_WRITTEN = 5;
+    private static final int PIXELS_SHADED = 6;
+    private static final int COUNTERS = 7;
+
+    private final int window;
+    private final long[][] counters;
+    private final long[] frameNanos;
+    private final long[] frameEnds;
+    private final long screenPixels;
+    private long framesRendered;
+    private long timeToFirstFrameMillis = -1;
+
+    public RenderStats(int window, int screenPixels) {
+        if (window < 1) {
+            throw new IllegalArgumentException("Window must contain frames: " + window);
+        }
+        this.window = window;
+        this.screenPixels = screenPixels;
+        counters = new long[COUNTERS][window];
+        frameNanos = new long[window];
+        frameEnds = new long[window];
+    }
+
+    /**
+     * Registers stats of the screen under {@link #OBJECT_NAME} in the platform MBean server.
+     */
+    public static RenderStats register(Screen screen) {
+        RenderStats stats = new RenderStats(DEFAULT_WINDOW, screen.getWidth() * screen.getHeight());
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(stats, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register " + OBJECT_NAME, e);
+        }
+        screen.setRenderStats(stats);
+        return stats;
+    }
+
+    synchronized void record(FrameStats frame, long nanos, long end) {
+        int slot = (int) (framesRendered % window);
+        counters[TRIANGLES_SUBMITTED][slot] = frame.getTrianglesSubmitted();
+        counters[TRIANGLES_BACKFACING][slot] = frame.getTrianglesBackfacing();
+        counters[TRIANGLES_NEAR_CLIPPED][slot] = frame.getTrianglesNearClipped();
+        counters[TRIANGLES_OCCLUDED][slot] = frame.getTrianglesOccluded();
+        counters[PIXELS_TESTED][slot] = frame.getPixelsTested();
+        counters[FRAGMENTS_WRITTEN][slot] = frame.getFragmentsWritten();
+        counters[PIXELS_SHADED][slot] = frame.getPixelsShaded();
+        frameNanos[slot] = nanos;
+        frameEnds[slot] = end;
+        if (framesRendered == 0) {
+            timeToFirstFrameMillis = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+        }
+        framesRendered++;
+    }
+
+    @Override
+    public synchronized long getFramesRendered() {
+        return framesRendered;
+    }
+
+    @Override
+    public synchronized long getTimeToFirstFrameMillis() {
+        return timeToFirstFrameMillis;
+    }
+
+    @Override
+    public synchronized int getWindowFrames() {
+        return (int) Math.min(framesRendered, window);
+    }
+
+    @Override
+    public synchronized double getFramesPerSecond() {
+        int frames = getWindowFrames();
+        if (frames < 2) {
+            return 0;
+        }
+        int last = (int) ((framesRendered - 1) % window);
+        int first = (int) ((framesRendered - frames) % window);
+        return (frames - 1) * 1e9 / (frameEnds[last] - frameEnds[first]);
+    }
+
+    @Override
+    public long getTrianglesSubmitted() {
+        return sum(TRIANGLES_SUBMITTED);
+    }
+
+    @Override
+    public long getTrianglesBackfacing() {
+        return sum(TRIANGLES_BACKFACING);
+    }
+
+    @Override
+    public long getTrianglesNearClipped() {
+        return sum(TRIANGLES_NEAR_CLIPPED);
+    }
+
+    @Override
+    public long getTrianglesOccluded() {
+        return sum(TRIANGLES_OCCLUDED);
+    }
+
+    @Override
+    public long getPixelsTested() {
+        return sum(PIXELS_TESTED);
+    }
+
+    @Override
+    public long getFragmentsWritten() {
+        return sum(FRAGMENTS_WRITTEN);
+    }
+
+    @Override
+    public long getPixelsShaded() {
+        return sum(PIXELS_SHADED);
+    }
+
+    @Override
+    public synchronized double getOverdrawRatio() {
+        int frames = getWindowFrames();
+        return frames == 0 ? 0 : (double) sum(FRAGMENTS_WRITTEN) / frames / screenPixels;
+    }
+
+    @Override
+    public double getFrameTimeMillisP50() {
+        return frameTimePercentile(50);
+    }
+
+    @Override
+    public double getFrameTimeMillisP95() {
+        return frameTimePercentile(95);
+    }
+
+    @Override
+    public double getFrameTimeMillisP99() {
+        return frameTimePercentile(99);
+    }
+
+    @Override
+    public double getFrameTimeMillisMax() {
+        return frameTimePercentile(100);
+    }
+
+    private synchronized long sum(int counter) {
+        long sum = 0;
+        for (int slot = 0; slot < getWindowFrames(); slot++) {
+            sum += counters[counter][slot];
+        }
+        return sum;
+    }
+
+    private synchronized double frameTimePercentile(int percent) {
+        int frames = getWindowFrames();
+        if (frames == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(frameNanos, frames);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percent / 100.0 * frames) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+}
@@ -0,0 +1,45 @@
+package by.pavel.scene;
+
+/**
+ * Rendering counters summed over the last frames, see {@link RenderStats}.
+ */
+public interface RenderStatsMXBean {
+
+    long getFramesRendered();
+
+    /**
+     * Time from the start of the JVM until the first frame was presented, -1 before that.
+     */
+    long getTimeToFirstFrameMillis();
+
+    int getWindowFrames();
+
+    double getFramesPerSecond();
+
+    long getTrianglesSubmitted();
+
+    long getTrianglesBackfacing();
+
+    long getTrianglesNearClipped();
+
+    long getTrianglesOccluded();
+
+    long getPixelsTested();
+
+    long getFragmentsWritten();
+
+    long getPixelsShaded();
+
+    /**
+     * Fragments written per screen pixel, 1 when every pixel is written once.
+     */
+    double getOverdrawRatio();
+
+    double getFrameTimeMillisP50();
+
+    double getFrameTimeMillisP95();
+
+    double getFrameTimeMillisP99();
+
+    double getFrameTimeMillisMax();
+}
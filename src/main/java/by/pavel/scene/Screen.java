@@ -1,322 +1,1326 @@
 package by.pavel.scene;
 
-import static java.lang.Integer.MAX_VALUE;
-import static java.lang.Math.abs;
 import static java.lang.Math.max;
 import static java.lang.Math.min;
-import static java.lang.Math.round;
 
-import static by.pavel.math.MathUtils.bound;
-import static by.pavel.math.Vector3f.negate3;
-import static by.pavel.math.Vector3f.normalize3;
 import static by.pavel.scene.ColorUtil.colorOf;
-import static by.pavel.scene.ColorUtil.rgbaVec;
 
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
-import java.awt.image.Raster;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.Optional;
-import java.util.function.Supplier;
+import java.util.function.IntConsumer;
 
+import by.pavel.math.Frustum;
 import by.pavel.math.Matrix4f;
-import by.pavel.math.Vector2f;
 import by.pavel.math.Vector3f;
-import by.pavel.math.Vector3i;
 import by.pavel.math.Vector4f;
 import by.pavel.math.VertexData;
 import by.pavel.shader.CalcPhongPixelShader;
 import by.pavel.shader.PixelData;
 import by.pavel.shader.PixelShader;
 import by.pavel.shader.SpecularMapPhongPixelShader;
+import by.pavel.texture.NormalMap;
+import by.pavel.texture.Texture;
+import by.pavel.texture.TextureFilter;
 import lombok.Getter;
-import lombok.SneakyThrows;
 
 public class Screen {
 
+    /**
+     * Object id of pixels not covered by any draw, and of draws without an id.
+     */
+    public static final int NO_OBJECT = 0;
+
     static final Vector3f DIFFUSE_LIGHT_DIRECTION = new Vector3f(0, 0, 1);
-    private static final Vector2f ZERO_VECTOR2f = new Vector2f(0, 0);
-    private static final int MAX_INT_MIN_1 = MAX_VALUE - 1;
+    private static final int TILE_SIZE = 64;
+    // triangles set up at once by a parallel instanced draw, bounds the triangle pool
+    private static final int INSTANCE_CHUNK_TRIANGLES = 1 << 15;
+    // frames whose changes are remembered, a back buffer further behind is redrawn fully
+    private static final int DAMAGE_HISTORY = 4;
+
+    // results of setting up a triangle
+    private static final int VISIBLE = 0;
+    private static final int BACKFACING = 1;
+    private static final int NEAR_CLIPPED = 2;
+    private static final int OUTSIDE = 3;
+    private static final int TARGET_CROSS_COLOR = colorOf(new Vector4f(127, 14, 210));
 
+    @Getter
     private final int width;
+    @Getter
     private final int height;
+    private final int tilesX;
+    private final int tilesY;
+
+    private RenderPool renderPool;
 
     @Getter
     private final Camera camera;
     private final Projection projection;
     private final List<LightSource> lightSources;
 
-    private float[] zBuffer;
-
+    private final SwapChain swapChain;
+    // back buffer of the swap chain, frames are drawn into it
+    @Getter
+    private FrameBuffer frameBuffer;
+    private GBuffer gBuffer;
+    private ObjectIdBuffer objectIdBuffer;
+    private StaticLayer staticLayer;
+    @Getter
+    private TextureFilter textureFilter = TextureFilter.NEAREST;
+    private final VertexCache vertexCache = new VertexCache();
+    private TriangleRasterizer sharedRasterizer;
+    // phong shaders of every draw, built again when the light sources are replaced
+    private PixelShader phongShader;
+    private PixelShader specularMapPhongShader;
+    private LightSource[] shaderLights = new LightSource[0];
+    private final List<ScreenTriangle> trianglePool = new ArrayList<>();
+    private final int[] binStart;
+    private final int[] binEnd;
+    private int[] binItems = new int[0];
+    private final float[] boundsCorner = new float[4];
+    private int[] visibleInstances = new int[0];
+    // model view projection matrices of the visible instances of a draw, and of a single draw
+    private Matrix4f[] instanceMvps = new Matrix4f[0];
+    private final Matrix4f drawMvp = new Matrix4f();
+    // the chunk of instances set up in parallel, read by setupInstance
+    private InstanceBatch chunkInstances;
+    private Mesh chunkMesh;
+    private boolean chunkTextured;
+    private int chunkFirst;
+    private int[] chunkTriangleCounts = new int[0];
+    private final IntConsumer instanceSetup = this::setupInstance;
+    // the draw rasterized in parallel, read by rasterizeTile, and the rasterizer of every tile
+    private Model tiledModel;
+    private PixelShader tiledShader;
+    private int tiledShaderIndex;
+    private final TriangleRasterizer[] tileRasterizers;
+    private final IntConsumer tileRasterization = this::rasterizeTile;
+    // pixel data and shaded pixel count of every row of tiles in the resolve pass
+    private final PixelData[] resolvePixelData;
+    private final long[] resolvedPixels;
+    private final IntConsumer tileRowResolve = this::resolveTileRow;
+    private Matrix4f viewProjection;
+    private Matrix4f viewProjectionSource;
+    private Frustum frustum;
+    private final HierarchicalZBuffer hiZ;
     @Getter
-    private final BufferedImage bufferedImage;
+    private final FrameStats frameStats = new FrameStats();
+    private RenderStats renderStats;
+    private FrameEvent frameEvent;
+    private long frameStart;
 
-    private boolean isObjectSelected = false;
-    private Vector3f selectedObjectModelCoordinates;
+    private long frameNumber;
+    // changes marked for the next frame, and the changes of the last frames by frame number
+    private final DirtyRegion pendingDamage = new DirtyRegion();
+    private final DirtyRegion[] damageHistory = new DirtyRegion[DAMAGE_HISTORY];
+    // draws only touch pixels inside of it
+    private final DirtyRegion scissor = new DirtyRegion();
+    // changes of the last presented frame in image coordinates
+    private final Rectangle presentedDamage = new Rectangle();
+    // screen bounds of the mesh last passed to projectBounds, inclusive and clamped to the screen
+    private int boundsMinX, boundsMinY, boundsMaxX, boundsMaxY;
+    private float boundsMinZ;
 
     public Screen(int width, int height, List<LightSource> lightSources) {
         this.width = width;
         this.height = height;
-        bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-        zBuffer = new float[width * height];
+        swapChain = new SwapChain(width, height);
+        frameBuffer = swapChain.getBackBuffer();
+        hiZ = new HierarchicalZBuffer(width, height);
         camera = new Camera(0.3f, new Vector3f(0, 0, 0), new Vector3f(0, 0, 1), new Vector3f(0, 1, 0));
         projection = new Projection(45, 1.33f, 0, 100);
         this.lightSources = lightSources;
+        tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+        tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+        binStart = new int[tilesX * tilesY + 1];
+        binEnd = new int[tilesX * tilesY];
+        tileRasterizers = new TriangleRasterizer[tilesX * tilesY];
+        resolvePixelData = new PixelData[tilesY];
+        for (int i = 0; i < tilesY; i++) {
+            resolvePixelData[i] = new PixelData();
+        }
+        resolvedPixels = new long[tilesY];
+        for (int i = 0; i < DAMAGE_HISTORY; i++) {
+            damageHistory[i] = new DirtyRegion();
+        }
+        scissor.add(0, 0, width, height, width, height);
+    }
+
+    public Screen(int width, int height, List<LightSource> lightSources, int renderThreads) {
+        this(width, height, lightSources);
+        setRenderThreads(renderThreads);
+    }
+
+    /**
+     * 1 thread draws triangles one by one, more threads bin triangles of every draw
+     * into screen tiles and rasterize the tiles in parallel. The image is the same in both modes.
+     */
+    public void setRenderThreads(int renderThreads) {
+        if (renderThreads < 1) {
+            throw new IllegalArgumentException("Render threads count must be positive: " + renderThreads);
+        }
+        if (renderPool != null) {
+            renderPool.shutdown();
+        }
+        renderPool = renderThreads == 1 ? null : new RenderPool(renderThreads);
+    }
+
+    public int getRenderThreads() {
+        return renderPool == null ? 1 : renderPool.getParallelism();
+    }
+
+    /**
+     * In deferred mode draws only fill the G-buffer with the closest surface of every pixel,
+     * and {@link #resolve()} runs the pixel shaders once per covered pixel.
+     */
+    public void setDeferredShading(boolean deferredShading) {
+        gBuffer = deferredShading ? new GBuffer(width * height) : null;
+    }
+
+    public boolean isDeferredShading() {
+        return gBuffer != null;
     }
 
+    /**
+     * Filtered sampling reads from the mip level matching the on-screen size of the texels,
+     * distant surfaces read the small levels. Invalidates the static layer.
+     */
+    public void setTextureFilter(TextureFilter textureFilter) {
+        if (textureFilter != this.textureFilter) {
+            this.textureFilter = textureFilter;
+            invalidateStaticLayer();
+        }
+    }
+
+    /**
+     * Makes draws write their object id and world position next to depth,
+     * see {@link #getObjectId(int, int)} and {@link #getWorldPosition(int, int)}.
+     */
+    public void setObjectIdBuffer(boolean enabled) {
+        objectIdBuffer = enabled ? new ObjectIdBuffer(width * height) : null;
+    }
+
+    public boolean isObjectIdBufferEnabled() {
+        return objectIdBuffer != null;
+    }
+
+    /**
+     * @return id of the object visible at the screen point, y pointing up,
+     * {@link #NO_OBJECT} when there is none or the object id buffer is disabled
+     */
+    public int getObjectId(int x, int y) {
+        if (objectIdBuffer == null || x < 0 || y < 0 || x >= width || y >= height) {
+            return NO_OBJECT;
+        }
+        return objectIdBuffer.ids[y * width + x];
+    }
+
+    /**
+     * @return world position of the surface visible at the screen point,
+     * null when no object with an id covers it
+     */
+    public Vector3f getWorldPosition(int x, int y) {
+        if (getObjectId(x, y) == NO_OBJECT) {
+            return null;
+        }
+        int idx = y * width + x;
+        return new Vector3f(objectIdBuffer.positionX[idx], objectIdBuffer.positionY[idx], objectIdBuffer.positionZ[idx]);
+    }
+
+    /**
+     * Starts a frame, it ends when it is presented.
+     */
     public void clear() {
-        zBuffer = new float[width * height];
-        for (int i = 0; i < width * height; i++) {
-            zBuffer[i] = Float.POSITIVE_INFINITY;
+        beginFrame();
+        RenderStageEvent stage = RenderStageEvent.begin(RenderStageEvent.CLEAR);
+        frameBuffer.clear();
+        hiZ.clear();
+        if (gBuffer != null) {
+            gBuffer.clear();
+        }
+        if (objectIdBuffer != null) {
+            objectIdBuffer.clear();
+        }
+        scissor.clear();
+        scissor.add(0, 0, width, height, width, height);
+        damage(frameNumber).set(scissor);
+        pendingDamage.clear();
+        stage.commit();
+    }
+
+    /**
+     * Starts a frame that only redraws what changed, instead of {@link #clear()}. The regions marked with
+     * {@link #markChanged} and {@link #markDirty} since the last frame, and those of the frames the back buffer
+     * missed, are restored from the static layer and become the scissor of all draws of the frame.
+     * Dynamic models are then drawn as usual, those outside of the scissor are skipped.
+     *
+     * @return false when the frame has to be cleared and drawn fully, because the static layer is not valid
+     * or the back buffer is too old, nothing is changed then
+     */
+    public boolean clearDirty() {
+        long drawnFrame = frameBuffer.frame;
+        if (drawnFrame == 0 || frameNumber - drawnFrame >= DAMAGE_HISTORY || staticLayer == null
+            || !staticLayer.isValid(camera.getViewMatrix(), projection.getProjectionMatrix(), lightSources, objectIdBuffer)) {
+            return false;
+        }
+        beginFrame();
+        RenderStageEvent stage = RenderStageEvent.begin(RenderStageEvent.CLEAR);
+        scissor.set(pendingDamage);
+        for (long frame = drawnFrame + 1; frame < frameNumber; frame++) {
+            scissor.add(damage(frame), width, height);
+        }
+        damage(frameNumber).set(pendingDamage);
+        pendingDamage.clear();
+        if (!scissor.isEmpty()) {
+            staticLayer.restore(frameBuffer, hiZ, objectIdBuffer, scissor);
+        }
+        if (gBuffer != null) {
+            gBuffer.clear();
+        }
+        frameStats.setStaticLayerRestored();
+        stage.commit();
+        return true;
+    }
+
+    private void beginFrame() {
+        frameStart = System.nanoTime();
+        frameEvent = FrameEvent.start();
+        if (staticLayer != null) {
+            staticLayer.stopRecording();
+        }
+        frameStats.reset();
+        frameNumber++;
+        frameBuffer.frame = frameNumber;
+    }
+
+    private DirtyRegion damage(long frame) {
+        return damageHistory[(int) (frame % DAMAGE_HISTORY)];
+    }
+
+    /**
+     * Marks the screen bounds of the instances that differ between the batches as changed for the next
+     * {@link #clearDirty()}, both where they were and where they are. Batches are compared by index.
+     */
+    public void markChanged(Model model, InstanceBatch previous, InstanceBatch current) {
+        Mesh mesh = model.getMesh();
+        for (int i = 0; i < max(previous.size(), current.size()); i++) {
+            if (i < previous.size() && i < current.size()
+                && previous.getTransform(i).equals(current.getTransform(i))
+                && previous.getColor(i).equals(current.getColor(i))
+                && previous.getObjectId(i) == current.getObjectId(i)) {
+                continue;
+            }
+            if (i < previous.size()) {
+                markDirty(mesh, previous.getTransform(i));
+            }
+            if (i < current.size()) {
+                markDirty(mesh, current.getTransform(i));
+            }
+        }
+    }
+
+    /**
+     * Marks the screen bounds of the model with its current model matrix as changed for the next {@link #clearDirty()}.
+     */
+    public void markDirty(Model model) {
+        markDirty(model.getMesh(), model.getModel());
+    }
+
+    private void markDirty(Mesh mesh, Matrix4f modelMatr) {
+        if (!projectBounds(mesh, modelMatr.multiply(getViewProjection()))) {
+            pendingDamage.add(0, 0, width, height, width, height);
+            return;
         }
-        bufferedImage.getGraphics().clearRect(0, 0, width, height);
+        // a pixel of margin for rounding of the triangle edges
+        pendingDamage.add(boundsMinX - 1, boundsMinY - 1, boundsMaxX + 2, boundsMaxY + 2, width, height);
+    }
+
+    /**
+     * Restores the static layer saved by {@link #saveStaticLayer()} over the cleared frame.
+     * Static models are drawn into the frame first, before any dynamic ones:
+     * <pre>
+     * screen.clear();
+     * if (!screen.restoreStaticLayer()) {
+     *     // draw static models
+     *     screen.saveStaticLayer();
+     * }
+     * // draw dynamic models
+     * </pre>
+     *
+     * Models drawn with {@link #drawOBJ} in between are tracked, moving any of them redraws the layer.
+     * Changes of instanced static models have to be reported with {@link #invalidateStaticLayer()}.
+     *
+     * @return false when the layer has to be drawn again, because there is none yet, or the camera view,
+     * the projection, a light or a static model changed since it was saved
+     */
+    public boolean restoreStaticLayer() {
+        if (staticLayer == null) {
+            staticLayer = new StaticLayer(width, height);
+        }
+        if (!staticLayer.isValid(camera.getViewMatrix(), projection.getProjectionMatrix(), lightSources, objectIdBuffer)) {
+            staticLayer.startRecording();
+            return false;
+        }
+        RenderStageEvent stage = RenderStageEvent.begin(RenderStageEvent.STATIC_LAYER);
+        staticLayer.restore(frameBuffer, hiZ, objectIdBuffer);
+        frameStats.setStaticLayerRestored();
+        stage.commit();
+        return true;
+    }
+
+    /**
+     * Saves everything drawn since {@link #clear()} as the static layer. In deferred mode the
+     * static models are lit right away, so {@link #resolve()} only lights the dynamic ones.
+     */
+    public void saveStaticLayer() {
+        if (gBuffer != null) {
+            resolve();
+            gBuffer.clear();
+        }
+        RenderStageEvent stage = RenderStageEvent.begin(RenderStageEvent.STATIC_LAYER);
+        if (staticLayer == null) {
+            staticLayer = new StaticLayer(width, height);
+        }
+        staticLayer.save(frameBuffer, hiZ, objectIdBuffer,
+            camera.getViewMatrix(), projection.getProjectionMatrix(), lightSources);
+        stage.commit();
+    }
+
+    /**
+     * Makes the next {@link #restoreStaticLayer()} fail, for when static models themselves change.
+     */
+    public void invalidateStaticLayer() {
+        if (staticLayer != null) {
+            staticLayer.invalidate();
+        }
+    }
+
+    /**
+     * Makes {@link #present()} record every frame in the given stats, null stops recording.
+     */
+    public void setRenderStats(RenderStats renderStats) {
+        this.renderStats = renderStats;
+    }
+
+    /**
+     * Lighting pass of deferred shading, has to be called after the last draw of the frame.
+     * Does nothing in forward mode.
+     */
+    public void resolve() {
+        if (gBuffer == null) {
+            return;
+        }
+        RenderStageEvent stage = RenderStageEvent.begin(RenderStageEvent.RESOLVE);
+        long shaded;
+        if (renderPool == null) {
+            shaded = resolveRows(0, height, resolvePixelData[0]);
+        } else {
+            renderPool.forEach(tilesY, tileRowResolve);
+            shaded = 0;
+            for (int tileY = 0; tileY < tilesY; tileY++) {
+                shaded += resolvedPixels[tileY];
+            }
+        }
+        frameStats.addFragments(0, 0, shaded);
+        stage.commit();
+    }
+
+    private void resolveTileRow(int tileY) {
+        resolvedPixels[tileY] = resolveRows(tileY * TILE_SIZE, min(tileY * TILE_SIZE + TILE_SIZE, height),
+            resolvePixelData[tileY]);
+    }
+
+    private long resolveRows(int fromY, int toY, PixelData pixelData) {
+        int[] pixels = frameBuffer.pixels;
+        Vector3f cameraPosition = camera.getEye();
+        long shaded = 0;
+        for (int y = fromY; y < toY; y++) {
+            int colorRow = (height - 1 - y) * width;
+            for (int x = 0; x < width; x++) {
+                int idx = y * width + x;
+                int shader = gBuffer.shader[idx];
+                if (shader < 0) {
+                    continue;
+                }
+                gBuffer.load(idx, pixelData);
+                pixels[colorRow + x] = gBuffer.getShader(shader).getPixelColor(cameraPosition, pixelData);
+                shaded++;
+            }
+        }
+        return shaded;
+    }
+
+    /**
+     * @return image of the frame being drawn
+     */
+    public BufferedImage getBufferedImage() {
+        return frameBuffer.getImage();
+    }
+
+    /**
+     * Publishes the finished frame for {@link #getPresentedImage()}, the next frame is drawn
+     * into another buffer. Called by the render thread after the last draw of the frame.
+     */
+    public void present() {
+        RenderStageEvent stage = RenderStageEvent.begin(RenderStageEvent.PRESENT);
+        DirtyRegion damage = damage(frameNumber);
+        presentedDamage.setBounds(damage.minX, height - damage.maxY,
+            max(0, damage.maxX - damage.minX), max(0, damage.maxY - damage.minY));
+        frameBuffer = swapChain.present();
+        stage.commit();
+        long now = System.nanoTime();
+        if (frameEvent != null) {
+            if (frameEvent.shouldCommit()) {
+                frameEvent.set(frameStats);
+                frameEvent.commit();
+            }
+            frameEvent = null;
+            if (renderStats != null) {
+                renderStats.record(frameStats, now - frameStart, now);
+            }
+        }
+    }
+
+    /**
+     * @return part of the image changed by the last presented frame, empty when nothing changed,
+     * for repainting only that part. Called on the render thread after {@link #present()}.
+     */
+    public Rectangle getPresentedDamage() {
+        return new Rectangle(presentedDamage);
+    }
+
+    /**
+     * @return image of the newest presented frame, safe to call from any single presenting thread,
+     * it is not drawn into until the next call
+     */
+    public BufferedImage getPresentedImage() {
+        return swapChain.acquireFront().getImage();
     }
 
     public void drawPixel(int x, int y, int color) {
-        bufferedImage.setRGB(x, height - 1 - y, color);
+        frameBuffer.setPixel(x, y, color);
     }
 
     public void drawPhong(Vector4f modelColor, Model model) {
-       if (Optional.ofNullable(model.getSpecularMap()).isPresent()) {
-           drawOBJ(modelColor, model, new SpecularMapPhongPixelShader(lightSources, 0.7f));
-       } else {
-           drawOBJ(modelColor, model, new CalcPhongPixelShader(lightSources, 0.7f));
-       }
+        drawPhong(modelColor, model, NO_OBJECT);
+    }
+
+    public void drawPhong(Vector4f modelColor, Model model, int objectId) {
+        drawOBJ(modelColor, model, phongShader(model), objectId);
+    }
+
+    public void drawPhongInstanced(Model model, InstanceBatch instances) {
+        drawInstanced(model, instances, phongShader(model));
+    }
+
+    private PixelShader phongShader(Model model) {
+        if (phongShader == null || !lightsMatch(shaderLights)) {
+            shaderLights = lightSources.toArray(new LightSource[0]);
+            phongShader = new CalcPhongPixelShader(lightSources, 0.7f);
+            specularMapPhongShader = new SpecularMapPhongPixelShader(lightSources, 0.7f);
+        }
+        return model.getSpecularMap() != null ? specularMapPhongShader : phongShader;
+    }
+
+    /**
+     * Shaders read positions and colors of the lights as they draw, only added, removed or replaced lights need new ones.
+     */
+    private boolean lightsMatch(LightSource[] lights) {
+        if (lights.length != lightSources.size()) {
+            return false;
+        }
+        for (int i = 0; i < lights.length; i++) {
+            if (lights[i] != lightSources.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void drawStraightInstanced(Model model, InstanceBatch instances) {
+        drawInstanced(model, instances, Screen::straightColor);
     }
 
     public void drawStraight(Vector4f modelColor, Model model) {
-        drawOBJ(modelColor, model, Screen::straightColor);
+        drawStraight(modelColor, model, NO_OBJECT);
+    }
+
+    public void drawStraight(Vector4f modelColor, Model model, int objectId) {
+        drawOBJ(modelColor, model, Screen::straightColor, objectId);
     }
 
     public void drawOBJ(Vector4f modelColor, Model model, PixelShader pixelShader) {
-        isObjectSelected = false;
-        selectedObjectModelCoordinates = null;
+        drawOBJ(modelColor, model, pixelShader, NO_OBJECT);
+    }
+
+    /**
+     * @param objectId written to the object id buffer for every visible pixel of the model
+     */
+    public void drawOBJ(Vector4f modelColor, Model model, PixelShader pixelShader, int objectId) {
+        Mesh mesh = model.getMesh();
+        DrawEvent event = DrawEvent.begin(1, mesh.getTriangleCount());
+        if (staticLayer != null && staticLayer.isRecording()) {
+            staticLayer.addModel(model);
+        }
         Matrix4f modelMatr = model.getModel();
+        Matrix4f mvp = modelMatr.multiply(getViewProjection(), drawMvp);
+        if (!isInFrustum(mesh, modelMatr, mvp) || isOutsideScissor(mesh, mvp)) {
+            frameStats.addCulledModel();
+        } else if (isOccluded(mesh, mvp)) {
+            frameStats.addOccludedModel();
+        } else {
+            event.visibleInstances = 1;
+            RenderStageEvent stage = RenderStageEvent.begin(RenderStageEvent.TRANSFORM);
+            vertexCache.transform(mesh, modelMatr, mvp, width, height);
+            stage.commit();
+            drawMesh(model, mesh, modelMatr, pixelShader, objectId, modelColor, modelColor, modelColor);
+        }
+        event.commit();
+    }
+
+    /**
+     * Draws every instance of the batch with the mesh and textures of the model, the model
+     * matrix of the model itself is ignored. With several render threads instances are
+     * transformed and set up in parallel, and their triangles are rasterized in one pass.
+     */
+    public void drawInstanced(Model model, InstanceBatch instances, PixelShader pixelShader) {
+        Mesh mesh = model.getMesh();
+        DrawEvent event = DrawEvent.begin(instances.size(), mesh.getTriangleCount());
+        Matrix4f viewProjection = getViewProjection();
+        if (visibleInstances.length < instances.size()) {
+            visibleInstances = new int[instances.size()];
+            int grown = instanceMvps.length;
+            instanceMvps = Arrays.copyOf(instanceMvps, instances.size());
+            for (int i = grown; i < instanceMvps.length; i++) {
+                instanceMvps[i] = new Matrix4f();
+            }
+        }
+        int visible = 0;
+        for (int instance = 0; instance < instances.size(); instance++) {
+            Matrix4f modelMatr = instances.getTransform(instance);
+            // written into the slot of the next visible instance, a culled one leaves it to be overwritten
+            Matrix4f mvp = modelMatr.multiply(viewProjection, instanceMvps[visible]);
+            if (!isInFrustum(mesh, modelMatr, mvp) || isOutsideScissor(mesh, mvp)) {
+                frameStats.addCulledModel();
+            } else if (isOccluded(mesh, mvp)) {
+                frameStats.addOccludedModel();
+            } else {
+                visibleInstances[visible] = instance;
+                visible++;
+            }
+        }
 
-        Raster texture = model.getTexture();
-        List<Vector3f> vertices = model.getVertices();
-        List<Vector3f> normals = model.getNormals();
-        List<Vector2f> uvTextures = model.getUvTextures();
-        for (List<Vector3i> face : model.getFaces()) {
-            int verticesPerFace = face.size();
-            for (int i = 1; i < verticesPerFace - 1; i++) {
-                Vector3f v1 = vertices.get(face.get(0).x);
-                Vector3f v2 = vertices.get(face.get(i).x);
-                Vector3f v3 = vertices.get(face.get(i + 1).x);
-
-                Vector3f v1n = normals.get(face.get(0).z);
-                Vector3f v2n = normals.get(face.get(i).z);
-                Vector3f v3n = normals.get(face.get(i + 1).z);
-
-                Vector2f v1t = ZERO_VECTOR2f, v2t = ZERO_VECTOR2f, v3t = ZERO_VECTOR2f;
-
-                if (texture != null) {
-                    v1t = face.get(0).y == MAX_INT_MIN_1 ? ZERO_VECTOR2f : uvTextures.get(face.get(0).y);
-                    v2t = face.get(i).y == MAX_INT_MIN_1 ? ZERO_VECTOR2f : uvTextures.get(face.get(i).y);
-                    v3t = face.get(i + 1).y == MAX_INT_MIN_1 ? ZERO_VECTOR2f : uvTextures.get(face.get(i + 1).y);
+        event.visibleInstances = visible;
+
+        boolean textured = isTextured(model);
+        if (renderPool == null) {
+            RenderStageEvent stage = RenderStageEvent.begin(RenderStageEvent.RASTERIZE);
+            TriangleRasterizer rasterizer = serialRasterizer(model, pixelShader);
+            reserveTriangles(1);
+            for (int i = 0; i < visible; i++) {
+                int instance = visibleInstances[i];
+                Matrix4f modelMatr = instances.getTransform(instance);
+                Vector4f color = instances.getColor(instance);
+                vertexCache.transform(mesh, modelMatr, instanceMvps[i], width, height);
+                setupTriangles(mesh, 0, textured, modelMatr, instances.getObjectId(instance), color, color, color, rasterizer);
+                hiZ.refresh();
+            }
+            finishDraw(rasterizer);
+            stage.commit();
+        } else {
+            int meshTriangles = max(mesh.getTriangleCount(), 1);
+            int chunkSize = max(1, INSTANCE_CHUNK_TRIANGLES / meshTriangles);
+            if (chunkTriangleCounts.length < min(chunkSize, visible)) {
+                chunkTriangleCounts = new int[min(chunkSize, visible)];
+            }
+            int[] triangleCounts = chunkTriangleCounts;
+            chunkInstances = instances;
+            chunkMesh = mesh;
+            chunkTextured = textured;
+            for (int chunkStart = 0; chunkStart < visible; chunkStart += chunkSize) {
+                int chunk = min(chunkSize, visible - chunkStart);
+                vertexCache.reserve(mesh, chunk);
+                reserveTriangles(chunk * meshTriangles);
+                RenderStageEvent stage = RenderStageEvent.begin(RenderStageEvent.SETUP);
+                chunkFirst = chunkStart;
+                renderPool.forEach(chunk, instanceSetup);
+                stage.commit();
+
+                // move triangles of all copies to the start of the pool
+                int triangleCount = 0;
+                for (int copy = 0; copy < chunk; copy++) {
+                    for (int i = 0; i < triangleCounts[copy]; i++) {
+                        Collections.swap(trianglePool, triangleCount++, copy * meshTriangles + i);
+                    }
                 }
-                VertexData vd1 = new VertexData(v1, v1n, modelMatr, modelColor, v1t);
-                VertexData vd2 = new VertexData(v2, v2n, modelMatr, modelColor, v2t);
-                VertexData vd3 = new VertexData(v3, v3n, modelMatr, modelColor, v3t);
-                drawTriangle(model, vd1, vd2, vd3, pixelShader);
+                drawTiled(model, triangleCount, pixelShader);
             }
+            chunkInstances = null;
+            chunkMesh = null;
         }
+        event.commit();
     }
 
-    private Vector4f divideByW(Vector4f v) {
-        return new Vector4f(v.x / v.w, v.y / v.w, v.z, 1);
+    /**
+     * Transforms and sets up the given copy of the chunk of instances being drawn.
+     */
+    private void setupInstance(int copy) {
+        InstanceBatch instances = chunkInstances;
+        int instance = visibleInstances[chunkFirst + copy];
+        Matrix4f modelMatr = instances.getTransform(instance);
+        Vector4f color = instances.getColor(instance);
+        vertexCache.transform(chunkMesh, modelMatr, instanceMvps[chunkFirst + copy], width, height, copy);
+        chunkTriangleCounts[copy] = setupTriangles(chunkMesh, copy, chunkTextured, modelMatr,
+            instances.getObjectId(instance), color, color, color, null);
     }
 
-    private boolean isBackface(Vector3f vm1, Vector3f vm2, Vector3f vm3) {
-        Vector3f side1 = new Vector3f(vm2.x - vm1.x, vm2.y - vm1.y, vm2.z - vm1.z);
-        Vector3f side2 = new Vector3f(vm3.x - vm1.x, vm3.y - vm1.y, vm3.z - vm1.z);
-        Vector3f triangleNormal = normalize3(side1.cross(side2));
-        Vector3f minus = vm1.minus(camera.getEye());
-        Vector3f direction = normalize3(minus);
-        return direction.dot(triangleNormal) < 0;
+    private void drawMesh(Model model, Mesh mesh, Matrix4f modelMatr, PixelShader pixelShader, int objectId,
+                          Vector4f c1, Vector4f c2, Vector4f c3) {
+        boolean textured = isTextured(model);
+        if (renderPool == null) {
+            RenderStageEvent stage = RenderStageEvent.begin(RenderStageEvent.RASTERIZE);
+            TriangleRasterizer rasterizer = serialRasterizer(model, pixelShader);
+            reserveTriangles(1);
+            setupTriangles(mesh, 0, textured, modelMatr, objectId, c1, c2, c3, rasterizer);
+            finishDraw(rasterizer);
+            stage.commit();
+        } else {
+            RenderStageEvent stage = RenderStageEvent.begin(RenderStageEvent.SETUP);
+            reserveTriangles(mesh.getTriangleCount());
+            int triangleCount = setupTriangles(mesh, 0, textured, modelMatr, objectId, c1, c2, c3, null);
+            stage.commit();
+            drawTiled(model, triangleCount, pixelShader);
+        }
     }
 
-    private float edge(float x1, float x2, float y1, float y2, float px, float py) {
-        return (px - x1) * (y2 - y1) - (py - y1) * (x2 - x1);
+    private static boolean isTextured(Model model) {
+        return model.getTexture() != null || model.getNormalMap() != null || model.getSpecularMap() != null;
     }
 
-    @SneakyThrows
-    public void drawTriangle(Model model, VertexData vd3, VertexData vd2, VertexData vd1, PixelShader pixelShader) {
+    /**
+     * Sets up the triangles of a transformed copy of the mesh. With a rasterizer they are
+     * drawn right away through the first pooled triangle, otherwise they are stored in the
+     * triangle pool starting at copy * triangle count. The pool has to be reserved already.
+     *
+     * @return number of triangles stored in the pool
+     */
+    private int setupTriangles(Mesh mesh, int copy, boolean textured, Matrix4f modelMatr, int objectId,
+                               Vector4f c1, Vector4f c2, Vector4f c3, TriangleRasterizer rasterizer) {
+        int first = copy * mesh.getTriangleCount();
+        int vertexBase = copy * mesh.getPositions().length;
+        int normalBase = copy * mesh.getNormals().length;
+        int triangleCount = 0;
+        int backfacing = 0;
+        int nearClipped = 0;
+        int[] corners = mesh.getTriangles();
+        for (int i = 0; i < corners.length; i += Mesh.TRIANGLE_SIZE) {
+            ScreenTriangle triangle = trianglePool.get(rasterizer == null ? first + triangleCount : 0);
+            int result = setupTriangle(triangle, mesh, i, textured, modelMatr, c1, c2, c3, vertexBase, normalBase);
+            if (result != VISIBLE) {
+                if (result == BACKFACING) {
+                    backfacing++;
+                } else if (result == NEAR_CLIPPED) {
+                    nearClipped++;
+                }
+                continue;
+            }
+            if (!scissor.intersects(triangle.minX, triangle.minY, triangle.maxX + 1, triangle.maxY + 1)) {
+                continue;
+            }
+            triangle.objectId = objectId;
+            if (rasterizer == null) {
+                triangleCount++;
+            } else if (hiZ.isOccluded(triangle.minX, triangle.minY, triangle.maxX, triangle.maxY, triangle.minZ)) {
+                frameStats.addOccludedTriangle();
+            } else {
+                rasterizer.rasterize(triangle, scissor.minX, scissor.minY, scissor.maxX, scissor.maxY);
+            }
+        }
+        frameStats.addTriangles(mesh.getTriangleCount(), backfacing, nearClipped);
+        return triangleCount;
+    }
 
-        Raster texture = model.getTexture();
-        Raster normalMap = model.getNormalMap();
-        Raster specularMap = model.getSpecularMap();
+    private void reserveTriangles(int count) {
+        while (trianglePool.size() < count) {
+            trianglePool.add(new ScreenTriangle());
+        }
+    }
+
+    private Matrix4f getViewProjection() {
+        Matrix4f view = camera.getViewMatrix();
+        if (view != viewProjectionSource) {
+            viewProjection = view.multiply(projection.projection);
+            frustum = new Frustum(viewProjection);
+            viewProjectionSource = view;
+        }
+        return viewProjection;
+    }
+
+    /**
+     * Tests the bounding sphere of the mesh in world space, then its bounding box in clip space.
+     */
+    private boolean isInFrustum(Mesh mesh, Matrix4f modelMatr, Matrix4f mvp) {
+        getViewProjection();
+        Vector3f center = mesh.getBoundingCenter();
+        float[] c = boundsCorner;
+        modelMatr.multiply(center.x, center.y, center.z, 1, c);
+        if (!frustum.intersectsSphere(c[0], c[1], c[2], mesh.getBoundingRadius() * modelMatr.getMaxScale())) {
+            return false;
+        }
+        return frustum.intersectsBox(mvp, mesh.getBoundsMin(), mesh.getBoundsMax());
+    }
+
+    /**
+     * Tests the screen bounds of the mesh bounding box against the hierarchical z-buffer.
+     */
+    private boolean isOccluded(Mesh mesh, Matrix4f mvp) {
+        if (!projectBounds(mesh, mvp) || boundsMinX > boundsMaxX || boundsMinY > boundsMaxY) {
+            return false;
+        }
+        return hiZ.isOccluded(boundsMinX, boundsMinY, boundsMaxX, boundsMaxY, boundsMinZ);
+    }
 
+    private boolean isOutsideScissor(Mesh mesh, Matrix4f mvp) {
+        if (scissor.minX == 0 && scissor.minY == 0 && scissor.maxX == width && scissor.maxY == height) {
+            return false;
+        }
+        if (!projectBounds(mesh, mvp)) {
+            return false;
+        }
+        return !scissor.intersects(boundsMinX, boundsMinY, boundsMaxX + 1, boundsMaxY + 1);
+    }
+
+    /**
+     * Projects the mesh bounding box to the screen, the bounds are stored in boundsMinX...boundsMinZ.
+     *
+     * @return false when the box reaches behind the camera and has no screen bounds
+     */
+    private boolean projectBounds(Mesh mesh, Matrix4f mvp) {
+        Vector3f boundsMin = mesh.getBoundsMin();
+        Vector3f boundsMax = mesh.getBoundsMax();
+        float minX = Float.POSITIVE_INFINITY, maxX = Float.NEGATIVE_INFINITY;
+        float minY = Float.POSITIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+        float minZ = Float.POSITIVE_INFINITY;
+        float[] v = boundsCorner;
+        for (int corner = 0; corner < 8; corner++) {
+            mvp.multiply(
+                (corner & 1) == 0 ? boundsMin.x : boundsMax.x,
+                (corner & 2) == 0 ? boundsMin.y : boundsMax.y,
+                (corner & 4) == 0 ? boundsMin.z : boundsMax.z,
+                1, v);
+            if (v[3] <= 0 || v[2] <= 0) {
+                return false;
+            }
+            float x = (v[0] / v[3] * width / 2.f) + width / 2.f;
+            float y = (v[1] / v[3] * height / 2.f) + height / 2.f;
+            minX = Math.min(minX, x);
+            maxX = Math.max(maxX, x);
+            minY = Math.min(minY, y);
+            maxY = Math.max(maxY, y);
+            minZ = Math.min(minZ, v[2]);
+        }
+        boundsMinX = max(0, (int) Math.floor(minX));
+        boundsMaxX = min(width - 1, (int) Math.ceil(maxX));
+        boundsMinY = max(0, (int) Math.floor(minY));
+        boundsMaxY = min(height - 1, (int) Math.ceil(maxY));
+        boundsMinZ = minZ;
+        return true;
+    }
+
+    private boolean isBackface(float[] world, int v1, int v2, int v3) {
+        float side1x = world[v2] - world[v1];
+        float side1y = world[v2 + 1] - world[v1 + 1];
+        float side1z = world[v2 + 2] - world[v1 + 2];
+        float side2x = world[v3] - world[v1];
+        float side2y = world[v3 + 1] - world[v1 + 1];
+        float side2z = world[v3 + 2] - world[v1 + 2];
+        Vector3f eye = camera.getEye();
+        float directionX = world[v1] - eye.x;
+        float directionY = world[v1 + 1] - eye.y;
+        float directionZ = world[v1 + 2] - eye.z;
+        return directionX * (side1y * side2z - side1z * side2y)
+            + directionY * (side1z * side2x - side1x * side2z)
+            + directionZ * (side1x * side2y - side1y * side2x) < 0;
+    }
+
+    public void drawTriangle(Model model, VertexData vd3, VertexData vd2, VertexData vd1, PixelShader pixelShader) {
+        VertexData[] vertices = {vd3, vd2, vd1};
+        float[] positions = new float[9];
+        float[] normals = new float[9];
+        float[] uvs = new float[6];
+        int[] corners = new int[Mesh.TRIANGLE_SIZE];
+        for (int i = 0; i < 3; i++) {
+            VertexData vd = vertices[i];
+            positions[i * 3] = vd.position.x;
+            positions[i * 3 + 1] = vd.position.y;
+            positions[i * 3 + 2] = vd.position.z;
+            normals[i * 3] = vd.normal.x;
+            normals[i * 3 + 1] = vd.normal.y;
+            normals[i * 3 + 2] = vd.normal.z;
+            if (vd.texture != null) {
+                uvs[i * 2] = vd.texture.x;
+                uvs[i * 2 + 1] = vd.texture.y;
+            }
+            corners[i * Mesh.CORNER_SIZE] = i;
+            corners[i * Mesh.CORNER_SIZE + 1] = i;
+            corners[i * Mesh.CORNER_SIZE + 2] = i;
+        }
+        Mesh mesh = new Mesh(positions, normals, uvs, corners);
         Matrix4f transform = vd1.transform;
-        Vector3f vm1 = transform.multiply(new Vector4f(vd1.position, 1.0f)).getXYZ();
-        Vector3f vm2 = vd2.transform.multiply(new Vector4f(vd2.position, 1.0f)).getXYZ();
-        Vector3f vm3 = vd3.transform.multiply(new Vector4f(vd3.position, 1.0f)).getXYZ();
+        vertexCache.transform(mesh, transform, transform.multiply(getViewProjection()), width, height);
+        drawMesh(model, mesh, transform, pixelShader, NO_OBJECT, vd3.color, vd2.color, vd1.color);
+    }
+
+    /**
+     * Rasterizes the first triangles of the pool, those hidden behind the hierarchical z-buffer are dropped first.
+     */
+    private void drawTiled(Model model, int setUpTriangles, PixelShader pixelShader) {
+        RenderStageEvent stage = RenderStageEvent.begin(RenderStageEvent.RASTERIZE);
+        int tileCount = tilesX * tilesY;
+        // bins as one array: triangles of tile i are binItems[binStart[i]] until binStart[i + 1]
+        int[] binStart = this.binStart;
+        Arrays.fill(binStart, 0);
+        int items = 0;
+        int triangleCount = 0;
+        for (int i = 0; i < setUpTriangles; i++) {
+            ScreenTriangle triangle = trianglePool.get(i);
+            if (hiZ.isOccluded(triangle.minX, triangle.minY, triangle.maxX, triangle.maxY, triangle.minZ)) {
+                frameStats.addOccludedTriangle();
+                continue;
+            }
+            Collections.swap(trianglePool, triangleCount++, i);
+            for (int tileY = firstTile(triangle.minY, scissor.minY); tileY <= lastTile(triangle.maxY, scissor.maxY); tileY++) {
+                for (int tileX = firstTile(triangle.minX, scissor.minX); tileX <= lastTile(triangle.maxX, scissor.maxX); tileX++) {
+                    binStart[tileY * tilesX + tileX + 1]++;
+                    items++;
+                }
+            }
+        }
+        for (int tile = 0; tile < tileCount; tile++) {
+            binStart[tile + 1] += binStart[tile];
+        }
+        if (binItems.length < items) {
+            binItems = new int[items * 2];
+        }
+        int[] binItems = this.binItems;
+        int[] binEnd = this.binEnd;
+        System.arraycopy(binStart, 0, binEnd, 0, tileCount);
+        for (int i = 0; i < triangleCount; i++) {
+            ScreenTriangle triangle = trianglePool.get(i);
+            for (int tileY = firstTile(triangle.minY, scissor.minY); tileY <= lastTile(triangle.maxY, scissor.maxY); tileY++) {
+                for (int tileX = firstTile(triangle.minX, scissor.minX); tileX <= lastTile(triangle.maxX, scissor.maxX); tileX++) {
+                    binItems[binEnd[tileY * tilesX + tileX]++] = i;
+                }
+            }
+        }
+
+        tiledModel = model;
+        tiledShader = pixelShader;
+        tiledShaderIndex = registerShader(pixelShader);
+        renderPool.forEach(tileCount, tileRasterization);
+        tiledModel = null;
+        tiledShader = null;
+
+        for (int tile = 0; tile < tileCount; tile++) {
+            if (binStart[tile] != binStart[tile + 1]) {
+                TriangleRasterizer rasterizer = tileRasterizers[tile];
+                frameStats.addFragments(rasterizer.tested, rasterizer.fragments, rasterizer.shaded);
+            }
+        }
+        finishDraw(null);
+        stage.commit();
+    }
 
-        if (isBackface(vm1, vm2, vm3)) {
+    /**
+     * Rasterizes the triangles binned into the given tile with the rasterizer of the tile.
+     */
+    private void rasterizeTile(int tile) {
+        int[] binStart = this.binStart;
+        if (binStart[tile] == binStart[tile + 1]) {
             return;
         }
+        int clipMinX = max(tile % tilesX * TILE_SIZE, scissor.minX);
+        int clipMinY = max(tile / tilesX * TILE_SIZE, scissor.minY);
+        int clipMaxX = min(tile % tilesX * TILE_SIZE + TILE_SIZE, scissor.maxX);
+        int clipMaxY = min(tile / tilesX * TILE_SIZE + TILE_SIZE, scissor.maxY);
+        TriangleRasterizer rasterizer = tileRasterizers[tile];
+        if (rasterizer == null) {
+            rasterizer = new TriangleRasterizer(tiledModel, tiledShader, tiledShaderIndex);
+            tileRasterizers[tile] = rasterizer;
+        } else {
+            rasterizer.reset(tiledModel, tiledShader, tiledShaderIndex);
+        }
+        int[] binItems = this.binItems;
+        for (int item = binStart[tile]; item < binStart[tile + 1]; item++) {
+            rasterizer.rasterize(trianglePool.get(binItems[item]), clipMinX, clipMinY, clipMaxX, clipMaxY);
+        }
+    }
+
+    /**
+     * @return first tile of inclusive bounds starting at min, inside of the scissor starting at scissorMin
+     */
+    private static int firstTile(int min, int scissorMin) {
+        return max(min, scissorMin) / TILE_SIZE;
+    }
 
-        Matrix4f mvp = transform.multiply(camera.getViewMatrix()).multiply(projection.projection);
-        Vector4f v1 = mvp.multiply(new Vector4f(vd1.position, 1.0f));
-        Vector4f v2 = mvp.multiply(new Vector4f(vd2.position, 1.0f));
-        Vector4f v3 = mvp.multiply(new Vector4f(vd3.position, 1.0f));
+    /**
+     * @return last tile of inclusive bounds ending at max, inside of the scissor ending before scissorMax
+     */
+    private static int lastTile(int max, int scissorMax) {
+        return min(max, scissorMax - 1) / TILE_SIZE;
+    }
 
-        Vector3f v1n = transform.multiply(new Vector4f(vd1.normal, 0)).getXYZ();
-        Vector3f v2n = vd2.transform.multiply(new Vector4f(vd2.normal, 0)).getXYZ();
-        Vector3f v3n = vd3.transform.multiply(new Vector4f(vd3.normal, 0)).getXYZ();
+    private int registerShader(PixelShader pixelShader) {
+        return gBuffer == null ? -1 : gBuffer.register(pixelShader);
+    }
 
-        float z1 = v1.z;
-        float z2 = v2.z;
-        float z3 = v3.z;
+    /**
+     * The rasterizer of draws with a single render thread, reused by every draw.
+     */
+    private TriangleRasterizer serialRasterizer(Model model, PixelShader pixelShader) {
+        if (sharedRasterizer == null) {
+            sharedRasterizer = new TriangleRasterizer(model, pixelShader, registerShader(pixelShader));
+            return sharedRasterizer;
+        }
+        return sharedRasterizer.reset(model, pixelShader, registerShader(pixelShader));
+    }
+
+    private void finishDraw(TriangleRasterizer rasterizer) {
+        hiZ.refresh();
+        if (rasterizer != null) {
+            frameStats.addFragments(rasterizer.tested, rasterizer.fragments, rasterizer.shaded);
+        }
+    }
+
+    /**
+     * Fills the triangle starting at the given offset of the mesh triangles from the vertex cache.
+     *
+     * @return {@link #VISIBLE}, or why the triangle is culled
+     */
+    private int setupTriangle(ScreenTriangle t, Mesh mesh, int offset, boolean textured,
+                                  Matrix4f transform, Vector4f c1, Vector4f c2, Vector4f c3,
+                                  int vertexBase, int normalBase) {
+        int[] corners = mesh.getTriangles();
+        // fan corners come as (first, previous, next), the triangle stores them in reverse
+        int corner1 = offset + 2 * Mesh.CORNER_SIZE;
+        int corner2 = offset + Mesh.CORNER_SIZE;
+        int corner3 = offset;
+        int v1 = vertexBase + corners[corner1] * 3;
+        int v2 = vertexBase + corners[corner2] * 3;
+        int v3 = vertexBase + corners[corner3] * 3;
+
+        float[] world = vertexCache.world;
+        if (isBackface(world, v1, v2, v3)) {
+            return BACKFACING;
+        }
+
+        float[] screen = vertexCache.screen;
+        float z1 = screen[v1 + 2];
+        float z2 = screen[v2 + 2];
+        float z3 = screen[v3 + 2];
 
         if (z1 < 0 || z2 < 0 || z3 < 0) {
-            return;
+            return NEAR_CLIPPED;
         }
 
-        float x1 = (v1.x / v1.w * width / 2.f) + width / 2.f;
-        float x2 = (v2.x / v2.w * width / 2.f) + width / 2.f;
-        float x3 = (v3.x / v3.w * width / 2.f) + width / 2.f;
+        t.transform = transform;
+        t.c1 = c1;
+        t.c2 = c2;
+        t.c3 = c3;
+
+        t.x1 = screen[v1];
+        t.x2 = screen[v2];
+        t.x3 = screen[v3];
+        t.y1 = screen[v1 + 1];
+        t.y2 = screen[v2 + 1];
+        t.y3 = screen[v3 + 1];
+
+        t.p1x = world[v1];
+        t.p1y = world[v1 + 1];
+        t.p1z = world[v1 + 2];
+        t.p2x = world[v2];
+        t.p2y = world[v2 + 1];
+        t.p2z = world[v2 + 2];
+        t.p3x = world[v3];
+        t.p3y = world[v3 + 1];
+        t.p3z = world[v3 + 2];
 
-        float y1 = (v1.y / v1.w * height / 2.f) + height / 2.f;
-        float y2 = (v2.y / v2.w * height / 2.f) + height / 2.f;
-        float y3 = (v3.y / v3.w * height / 2.f) + height / 2.f;
+        float[] normals = vertexCache.normals;
+        int n1 = corners[corner1 + 2] < 0 ? -1 : normalBase + corners[corner1 + 2] * 3;
+        int n2 = corners[corner2 + 2] < 0 ? -1 : normalBase + corners[corner2 + 2] * 3;
+        int n3 = corners[corner3 + 2] < 0 ? -1 : normalBase + corners[corner3 + 2] * 3;
+        t.n1x = n1 < 0 ? 0 : normals[n1];
+        t.n1y = n1 < 0 ? 0 : normals[n1 + 1];
+        t.n1z = n1 < 0 ? 0 : normals[n1 + 2];
+        t.n2x = n2 < 0 ? 0 : normals[n2];
+        t.n2y = n2 < 0 ? 0 : normals[n2 + 1];
+        t.n2z = n2 < 0 ? 0 : normals[n2 + 2];
+        t.n3x = n3 < 0 ? 0 : normals[n3];
+        t.n3y = n3 < 0 ? 0 : normals[n3 + 1];
+        t.n3z = n3 < 0 ? 0 : normals[n3 + 2];
 
-        float v1tx = 0, v1ty = 0, v2tx = 0, v2ty = 0, v3tx = 0, v3ty = 0;
-        if (texture != null || normalMap != null || specularMap != null) {
-            v1tx = vd1.texture.x;
-            v1ty = vd1.texture.y;
-            v2tx = vd2.texture.x;
-            v2ty = vd2.texture.y;
-            v3tx = vd3.texture.x;
-            v3ty = vd3.texture.y;
+        t.v1tx = t.v1ty = t.v2tx = t.v2ty = t.v3tx = t.v3ty = 0;
+        if (textured) {
+            float[] uvs = mesh.getUvs();
+            int uv1 = corners[corner1 + 1] * 2;
+            int uv2 = corners[corner2 + 1] * 2;
+            int uv3 = corners[corner3 + 1] * 2;
+            if (uv1 >= 0) {
+                t.v1tx = uvs[uv1];
+                t.v1ty = uvs[uv1 + 1];
+            }
+            if (uv2 >= 0) {
+                t.v2tx = uvs[uv2];
+                t.v2ty = uvs[uv2 + 1];
+            }
+            if (uv3 >= 0) {
+                t.v3tx = uvs[uv3];
+                t.v3ty = uvs[uv3 + 1];
+            }
         }
+        t.setDepth(z1, z2, z3);
 
-        v1tx /= z1; v1ty /= z1;
-        v2tx /= z2; v2ty /= z2;
-        v3tx /= z3; v3ty /= z3;
+        return t.setupEdges(width, height) ? VISIBLE : OUTSIDE;
+    }
 
-        // pre-compute 1 over z
-        z1 = 1.f / z1;
-        z2 = 1.f / z2;
-        z3 = 1.f / z3;
+    private class TriangleRasterizer {
 
-        float minX = min(min(x1, x2), x3);
-        float maxX = max(max(x1, x2), x3);
-        float minY = min(min(y1, y2), y3);
-        float maxY = max(max(y1, y2), y3);
-        Vector3f cameraPosition = camera.getEye();
+        private static final int BLOCK_SIZE = 8;
+
+        private PixelShader pixelShader;
+        private int shaderIndex;
+        private long tested;
+        private long fragments;
+        private long shaded;
+        private Texture texture;
+        private NormalMap normalMap;
+        private Texture specularMap;
+        private boolean textured;
+        private TextureFilter filter;
+        private Vector3f cameraPosition;
+        private ObjectIdBuffer objectIds;
+
+        private int[] pixels;
+        private float[] depth;
+
+        private final float[] normal = new float[3];
+        private final float[] transformed = new float[4];
+        private final PixelData pixelData = new PixelData();
+
+        TriangleRasterizer(Model model, PixelShader pixelShader, int shaderIndex) {
+            reset(model, pixelShader, shaderIndex);
+        }
 
-        int[] color = new int[4];
-        int[] normal = new int[4];
-        int[] specular = new int[4];
-        int tWidth = texture == null ? 0 : texture.getWidth() - 1;
-        int tHeight = texture == null ? 0 : texture.getHeight() - 1;
-        int nWidth = normalMap == null ? 0 : normalMap.getWidth() - 1;
-        int nHeight = normalMap == null ? 0 : normalMap.getHeight() - 1;
-
-        int centralPixelIndex = width * height / 2;
-        for (float y = bound(round(minY), height); y <= bound(round(maxY), height); y += 1) {
-            for (float x = bound(round(minX), width); x <= bound(round(maxX), width); x += 1) {
-                float e1 = edge(x1, x2, y1, y2, x, y);
-                float e2 = edge(x2, x3, y2, y3, x, y);
-                float e3 = edge(x3, x1, y3, y1, x, y);
-                if (e1 >= 0 && e3 >= 0 && e2 >= 0) {
-                    float area = edge(x1, x2, y1, y2, x3, y3);
-                    float w3 = e1 / area;
-                    float w2 = e3 / area;
-                    float w1 = e2 / area;
-
-                    int idx = (int) y * width + (int) x;
-                    if (x < 0 || x >= width || y < 0 || y >= height) {
+        /**
+         * Starts a new draw with this rasterizer, with the buffers and settings the screen has now.
+         */
+        TriangleRasterizer reset(Model model, PixelShader pixelShader, int shaderIndex) {
+            this.pixelShader = pixelShader;
+            this.shaderIndex = shaderIndex;
+            tested = 0;
+            fragments = 0;
+            shaded = 0;
+            texture = model.getTexture();
+            normalMap = model.getNormalMap();
+            specularMap = model.getSpecularMap();
+            textured = texture != null || normalMap != null || specularMap != null;
+            filter = textureFilter;
+            cameraPosition = camera.getEye();
+            objectIds = objectIdBuffer;
+            pixels = frameBuffer.pixels;
+            depth = frameBuffer.depth;
+            return this;
+        }
+
+        /**
+         * Walks the triangle bounds in 8x8 blocks: blocks outside of an edge are skipped,
+         * blocks inside of all edges skip per-pixel edge tests.
+         */
+        void rasterize(ScreenTriangle t, int clipMinX, int clipMinY, int clipMaxX, int clipMaxY) {
+            int startX = max(t.minX, clipMinX);
+            int endX = min(t.maxX, clipMaxX - 1);
+            int startY = max(t.minY, clipMinY);
+            int endY = min(t.maxY, clipMaxY - 1);
+
+            for (int blockY = startY & -BLOCK_SIZE; blockY <= endY; blockY += BLOCK_SIZE) {
+                int y0 = max(blockY, startY);
+                int y1 = min(blockY + BLOCK_SIZE - 1, endY);
+                for (int blockX = startX & -BLOCK_SIZE; blockX <= endX; blockX += BLOCK_SIZE) {
+                    int x0 = max(blockX, startX);
+                    int x1 = min(blockX + BLOCK_SIZE - 1, endX);
+
+                    long e1 = t.edge1(x0, y0);
+                    long e2 = t.edge2(x0, y0);
+                    long e3 = t.edge3(x0, y0);
+                    int block = hiZ.blockIndex(x0, y0);
+                    if (t.minZ >= hiZ.blockMax[block]) {
                         continue;
                     }
-                    float initialBuf = zBuffer[idx];
-                    float z = 1 / (w1 * z1 + w2 * z2 + w3 * z3);
-                    if (z < initialBuf) {
-                        zBuffer[idx] = z;
-                        if (abs(x - Mouse.getInstance().getX()) < 2 && abs(y - Mouse.getInstance().getY()) < 2) {
-                            isObjectSelected = true;
-                            selectedObjectModelCoordinates = new Vector3f(
-                                vm1.x * w1 + vm2.x * w2 + vm3.x * w3,
-                                vm1.y * w1 + vm2.y * w2 + vm3.y * w3,
-                                vm1.z * w1 + vm2.z * w2 + vm3.z * w3
-                            );
-                        }
-                    } else {
+                    int dx = x1 - x0;
+                    int dy = y1 - y0;
+                    if (maxCorner(e1, t.e1Dx, t.e1Dy, dx, dy) < 0
+                        || maxCorner(e2, t.e2Dx, t.e2Dy, dx, dy) < 0
+                        || maxCorner(e3, t.e3Dx, t.e3Dy, dx, dy) < 0) {
                         continue;
                     }
-                    float s = w1 * v1tx + w2 * v2tx + w3 * v3tx;
-                    float t = w1 * v1ty + w2 * v2ty + w3 * v3ty;
+                    boolean covered = minCorner(e1, t.e1Dx, t.e1Dy, dx, dy) >= 0
+                        && minCorner(e2, t.e2Dx, t.e2Dy, dx, dy) >= 0
+                        && minCorner(e3, t.e3Dx, t.e3Dy, dx, dy) >= 0;
 
-                    // if we use perspective correct interpolation we need to
-                    // multiply the result of this interpolation by z, the depth
-                    // of the point on the 3D triangle that the pixel overlaps.
-                    s *= z;
-                    t *= z;
+                    long blockFragments = fragments;
+                    for (int py = y0; py <= y1; py++) {
+                        long r1 = e1;
+                        long r2 = e2;
+                        long r3 = e3;
+                        for (int px = x0; px <= x1; px++) {
+                            if (covered || (r1 | r2 | r3) >= 0) {
+                                shadePixel(t, px, py, r1, r2, r3);
+                            }
+                            r1 += t.e1Dx;
+                            r2 += t.e2Dx;
+                            r3 += t.e3Dx;
+                        }
+                        e1 += t.e1Dy;
+                        e2 += t.e2Dy;
+                        e3 += t.e3Dy;
+                    }
+                    if (fragments != blockFragments) {
+                        hiZ.updateBlock(depth, x0, y0);
+                    }
+                }
+            }
+        }
 
-                    int sTexture = (int)(s * tWidth);
-                    int tTexture = (int)(tHeight * (1 - t));
+        private void shadePixel(ScreenTriangle t, int px, int py, long e1, long e2, long e3) {
+            int idx = py * width + px;
+            float z = 1 / (t.zInvMin + (px - t.minX) * t.zInvDx + (py - t.minY) * t.zInvDy);
+            tested++;
+            if (z >= depth[idx]) {
+                return;
+            }
+            depth[idx] = z;
+            fragments++;
 
-                    int sNormal = (int)(s * nWidth);
-                    int tNormal = (int)(nHeight * (1 - t));
+            float w3 = e1 * t.invArea;
+            float w2 = e3 * t.invArea;
+            float w1 = e2 * t.invArea;
 
-                    int[] pixelColorArr = texture == null ? null : texture.getPixel(sTexture, tTexture, color);
-                    int[] normalArr = normalMap == null ? null : normalMap.getPixel(sNormal, tNormal, normal);
-                    int[] specularArr = specularMap == null ? null : specularMap.getPixel(sNormal, tNormal, specular);
+            PixelData pixelData = this.pixelData;
+            pixelData.positionX = t.p1x * w1 + t.p2x * w2 + t.p3x * w3;
+            pixelData.positionY = t.p1y * w1 + t.p2y * w2 + t.p3y * w3;
+            pixelData.positionZ = t.p1z * w1 + t.p2z * w2 + t.p3z * w3;
 
-//                    Matrix3f finalTBN = TBN;
-                    Supplier<Vector3f> pixelNormalSupplier = normalMap == null
-                        ? () -> v1n.mul(w1).plus(v2n.mul(w2)).plus(v3n.mul(w3))
-                        : () -> transform.multiply(new Vector4f(normalArr[0] * 2 - 256f, normalArr[1] * 2 - 256f, normalArr[2] * 2 - 256f, 0)).getXYZ();
+            if (objectIds != null) {
+                objectIds.ids[idx] = t.objectId;
+                objectIds.positionX[idx] = pixelData.positionX;
+                objectIds.positionY[idx] = pixelData.positionY;
+                objectIds.positionZ[idx] = pixelData.positionZ;
+            }
 
-                    //comment this line
-//                    pixelNormalSupplier = () -> triangleNormal;
+            float s = 0;
+            float tt = 0;
+            if (textured) {
+                // if we use perspective correct interpolation we need to
+                // multiply the result of this interpolation by z, the depth
+                // of the point on the 3D triangle that the pixel overlaps.
+                s = (w1 * t.v1tx + w2 * t.v2tx + w3 * t.v3tx) * z;
+                tt = (w1 * t.v1ty + w2 * t.v2ty + w3 * t.v3ty) * z;
+            }
+            // screen derivatives of the texture coordinates pick the mip level,
+            // d(a / zInv) = (da - a / zInv * dzInv) / zInv
+            float dsdx = 0, dtdx = 0, dsdy = 0, dtdy = 0;
+            if (textured && filter != TextureFilter.NEAREST) {
+                dsdx = (t.txDx - s * t.zInvDx) * z;
+                dtdx = (t.tyDx - tt * t.zInvDx) * z;
+                dsdy = (t.txDy - s * t.zInvDy) * z;
+                dtdy = (t.tyDy - tt * t.zInvDy) * z;
+            }
 
-                    Vector3f pixelNormal = normalize3(pixelNormalSupplier.get());
-                    Vector3f pixelModelPosition = vm1.mul(w1).plus(vm2.mul(w2)).plus(vm3.mul(w3));
+            float nx, ny, nz;
+            if (normalMap == null) {
+                nx = t.n1x * w1 + t.n2x * w2 + t.n3x * w3;
+                ny = t.n1y * w1 + t.n2y * w2 + t.n3y * w3;
+                nz = t.n1z * w1 + t.n2z * w2 + t.n3z * w3;
+            } else {
+                if (filter == TextureFilter.NEAREST) {
+                    normalMap.sample(s, tt, normal);
+                } else {
+                    normalMap.sample(s, tt, normalMap.lod(dsdx, dtdx, dsdy, dtdy), filter, normal);
+                }
+                t.transform.multiply(normal[0], normal[1], normal[2], 0, transformed);
+                nx = transformed[0];
+                ny = transformed[1];
+                nz = transformed[2];
+            }
+            float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+            if (length != 0) {
+                nx /= length;
+                ny /= length;
+                nz /= length;
+            }
+            pixelData.normalX = nx;
+            pixelData.normalY = ny;
+            pixelData.normalZ = nz;
 
-                    Supplier<Vector4f> colorSupplier = texture == null ?
-                        () -> vd1.color.mul(w1).plus(vd2.color.mul(w2)).plus(vd3.color.mul(w3)) :
-                        () -> rgbaVec(colorOf(pixelColorArr[0], pixelColorArr[1], pixelColorArr[2], 255));
+            if (texture == null) {
+                pixelData.red = t.c1.x * w1 + t.c2.x * w2 + t.c3.x * w3;
+                pixelData.green = t.c1.y * w1 + t.c2.y * w2 + t.c3.y * w3;
+                pixelData.blue = t.c1.z * w1 + t.c2.z * w2 + t.c3.z * w3;
+            } else {
+                int color = filter == TextureFilter.NEAREST
+                    ? texture.sample(s, tt)
+                    : texture.sample(s, tt, texture.lod(dsdx, dtdx, dsdy, dtdy), filter);
+                pixelData.red = (color >> 16 & 0xff) / 255f;
+                pixelData.green = (color >> 8 & 0xff) / 255f;
+                pixelData.blue = (color & 0xff) / 255f;
+            }
 
-                    Vector4f pixelColor = colorSupplier.get();
+            if (specularMap != null) {
+                int specular = filter == TextureFilter.NEAREST
+                    ? specularMap.sample(s, tt)
+                    : specularMap.sample(s, tt, specularMap.lod(dsdx, dtdx, dsdy, dtdy), filter);
+                pixelData.specularCoefficient = (specular >> 16 & 0xff) / 255f;
+            }
 
-                    Supplier<Float> specularCoefficient = specularMap == null
-                        ? () -> null
-                        : () -> specularArr[0] / 255f;
+            if (gBuffer != null) {
+                gBuffer.store(idx, shaderIndex, pixelData);
+            } else {
+                pixels[(height - 1 - py) * width + px] = pixelShader.getPixelColor(cameraPosition, pixelData);
+                shaded++;
+            }
+        }
 
-                    PixelData pixelData = new PixelData(pixelNormal, pixelModelPosition, pixelColor, specularCoefficient.get());
-                    Vector4f finalColor = pixelShader.getPixelColor(cameraPosition, pixelData);
+        private long maxCorner(long e, long eDx, long eDy, int dx, int dy) {
+            return e + max(0, eDx * dx) + max(0, eDy * dy);
+        }
 
-                    drawPixel((int) x, (int) y, colorOf(finalColor));
-                }
-            }
+        private long minCorner(long e, long eDx, long eDy, int dx, int dy) {
+            return e + min(0, eDx * dx) + min(0, eDy * dy);
         }
     }
 
     public void drawTargetCross() {
+        int centerY = height - 1 - height / 2;
         for (int x = width / 2 - 10; x < width / 2 + 10; x++) {
-            bufferedImage.setRGB(x, height / 2, colorOf(new Vector4f(127, 14, 210)));
+            frameBuffer.setPixel(x, centerY, TARGET_CROSS_COLOR);
         }
-        for (int y = height / 2 - 10; y < height / 2 + 10; y++) {
-            bufferedImage.setRGB(width/2, y, colorOf(new Vector4f(127, 14, 210)));
+        for (int y = centerY - 9; y <= centerY + 10; y++) {
+            frameBuffer.setPixel(width / 2, y, TARGET_CROSS_COLOR);
         }
     }
 
-    private static Vector4f straightColor(Vector3f cameraPosition, PixelData pixelData) {
-        return pixelData.getPixelColor();
-    }
-
-    private static Vector4f flatShadingColor(Vector3f cameraPosition, PixelData pixelData) {
-        Vector4f pixelColor = pixelData.getPixelColor();
-        Vector3f pixelNormal = pixelData.getPixelNormal();
-        return pixelColor.mul((1.f + pixelNormal.dot(negate3(DIFFUSE_LIGHT_DIRECTION))) / 2.f);
-    }
-
-    public boolean isObjectSelected() {
-        return isObjectSelected;
+    private static int straightColor(Vector3f cameraPosition, PixelData pixelData) {
+        return colorOf(pixelData.red, pixelData.green, pixelData.blue);
     }
 
-    public Vector3f getSelectedObjectModelCoordinates() {
-        return selectedObjectModelCoordinates;
+    private static int flatShadingColor(Vector3f cameraPosition, PixelData pixelData) {
+        float light = (1.f + pixelData.normalX * -DIFFUSE_LIGHT_DIRECTION.x
+            + pixelData.normalY * -DIFFUSE_LIGHT_DIRECTION.y
+            + pixelData.normalZ * -DIFFUSE_LIGHT_DIRECTION.z) / 2.f;
+        return colorOf(pixelData.red * light, pixelData.green * light, pixelData.blue * light);
     }
 }
\ No newline at end of file
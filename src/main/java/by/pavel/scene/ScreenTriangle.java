@@ -0,0 +1,136 @@
+package by.pavel.scene;
+
+import static java.lang.Math.abs;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import by.pavel.math.Matrix4f;
+import by.pavel.math.Vector4f;
+
+class ScreenTriangle {
+
+    static final int SUBPIXEL_BITS = 8;
+    static final int SUBPIXEL_ONE = 1 << SUBPIXEL_BITS;
+
+    // vertices further away are dropped, this keeps edge equations inside of long
+    private static final float GUARD_BAND = 1 << 20;
+    // interpolated depth may come out slightly closer than the nearest vertex
+    private static final float DEPTH_EPSILON = 1e-4f;
+
+    float x1, x2, x3;
+    float y1, y2, y3;
+
+    // 1 / z for perspective correct interpolation
+    float z1, z2, z3;
+
+    // texture coordinates divided by z
+    float v1tx, v1ty, v2tx, v2ty, v3tx, v3ty;
+
+    // world space positions and normals
+    float p1x, p1y, p1z, p2x, p2y, p2z, p3x, p3y, p3z;
+    float n1x, n1y, n1z, n2x, n2y, n2z, n3x, n3y, n3z;
+
+    Vector4f c1, c2, c3;
+    Matrix4f transform;
+    int objectId;
+
+    // inclusive pixel bounds, already clamped to the screen
+    int minX, maxX, minY, maxY;
+    // conservative nearest depth
+    float minZ;
+
+    // edge equations in subpixel units: e(px, py) = e0 + px * eDx + py * eDy,
+    // a pixel is inside when all three are >= 0 (top-left rule is baked into e0)
+    long e10, e1Dx, e1Dy;
+    long e20, e2Dx, e2Dy;
+    long e30, e3Dx, e3Dy;
+    float invArea;
+
+    // plane equation of 1 / z: zInv(px, py) = zInvMin + (px - minX) * zInvDx + (py - minY) * zInvDy
+    float zInvMin, zInvDx, zInvDy;
+    // per pixel steps of the texture coordinates divided by z
+    float txDx, txDy, tyDx, tyDy;
+
+    /**
+     * Turns clip z of the vertices into 1 / z and divides texture coordinates by it.
+     */
+    void setDepth(float z1, float z2, float z3) {
+        v1tx /= z1;
+        v1ty /= z1;
+        v2tx /= z2;
+        v2ty /= z2;
+        v3tx /= z3;
+        v3ty /= z3;
+        this.z1 = 1.f / z1;
+        this.z2 = 1.f / z2;
+        this.z3 = 1.f / z3;
+    }
+
+    boolean setupEdges(int width, int height) {
+        if (!(abs(x1) < GUARD_BAND && abs(x2) < GUARD_BAND && abs(x3) < GUARD_BAND
+            && abs(y1) < GUARD_BAND && abs(y2) < GUARD_BAND && abs(y3) < GUARD_BAND)) {
+            return false;
+        }
+        long fx1 = Math.round(x1 * SUBPIXEL_ONE);
+        long fx2 = Math.round(x2 * SUBPIXEL_ONE);
+        long fx3 = Math.round(x3 * SUBPIXEL_ONE);
+        long fy1 = Math.round(y1 * SUBPIXEL_ONE);
+        long fy2 = Math.round(y2 * SUBPIXEL_ONE);
+        long fy3 = Math.round(y3 * SUBPIXEL_ONE);
+
+        long area = (fx3 - fx1) * (fy2 - fy1) - (fy3 - fy1) * (fx2 - fx1);
+        if (area <= 0) {
+            return false;
+        }
+
+        minX = max((int) Math.floorDiv(min(min(fx1, fx2), fx3) + SUBPIXEL_ONE - 1, SUBPIXEL_ONE), 0);
+        maxX = min((int) Math.floorDiv(max(max(fx1, fx2), fx3), SUBPIXEL_ONE), width - 1);
+        minY = max((int) Math.floorDiv(min(min(fy1, fy2), fy3) + SUBPIXEL_ONE - 1, SUBPIXEL_ONE), 0);
+        maxY = min((int) Math.floorDiv(max(max(fy1, fy2), fy3), SUBPIXEL_ONE), height - 1);
+        if (minX > maxX || minY > maxY) {
+            return false;
+        }
+
+        e1Dx = (fy2 - fy1) << SUBPIXEL_BITS;
+        e1Dy = (fx1 - fx2) << SUBPIXEL_BITS;
+        e10 = edgeOrigin(fx1, fy1, fx2, fy2);
+        e2Dx = (fy3 - fy2) << SUBPIXEL_BITS;
+        e2Dy = (fx2 - fx3) << SUBPIXEL_BITS;
+        e20 = edgeOrigin(fx2, fy2, fx3, fy3);
+        e3Dx = (fy1 - fy3) << SUBPIXEL_BITS;
+        e3Dy = (fx3 - fx1) << SUBPIXEL_BITS;
+        e30 = edgeOrigin(fx3, fy3, fx1, fy1);
+        invArea = 1.f / area;
+        minZ = 1.f / max(max(z1, z2), z3) * (1 - DEPTH_EPSILON);
+
+        // w1 = e2 / area, w2 = e3 / area, w3 = e1 / area
+        zInvDx = (z1 * e2Dx + z2 * e3Dx + z3 * e1Dx) * invArea;
+        zInvDy = (z1 * e2Dy + z2 * e3Dy + z3 * e1Dy) * invArea;
+        txDx = (v1tx * e2Dx + v2tx * e3Dx + v3tx * e1Dx) * invArea;
+        txDy = (v1tx * e2Dy + v2tx * e3Dy + v3tx * e1Dy) * invArea;
+        tyDx = (v1ty * e2Dx + v2ty * e3Dx + v3ty * e1Dx) * invArea;
+        tyDy = (v1ty * e2Dy + v2ty * e3Dy + v3ty * e1Dy) * invArea;
+        zInvMin = (float) ((z1 * (double) edge2(minX, minY) + z2 * (double) edge3(minX, minY)
+            + z3 * (double) edge1(minX, minY)) / area);
+        return true;
+    }
+
+    long edge1(int px, int py) {
+        return e10 + px * e1Dx + py * e1Dy;
+    }
+
+    long edge2(int px, int py) {
+        return e20 + px * e2Dx + py * e2Dy;
+    }
+
+    long edge3(int px, int py) {
+        return e30 + px * e3Dx + py * e3Dy;
+    }
+
+    private static long edgeOrigin(long xa, long ya, long xb, long yb) {
+        long dy = yb - ya;
+        long dx = xb - xa;
+        boolean topLeft = dy > 0 || dy == 0 && dx > 0;
+        return -xa * dy + ya * dx - (topLeft ? 0 : 1);
+    }
+}
@@ -0,0 +1,155 @@
+package by.pavel.scene;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import by.pavel.math.Matrix4f;
+
+/**
+ * Colour, depth, hierarchical depth and object ids of the static models, kept between frames.
+ * The layer is valid for the view, projection, lights and model matrices it was drawn with;
+ * any of them changing makes {@link #isValid} fail, so the static models get drawn and saved again.
+ */
+class StaticLayer {
+
+    private static final int LIGHT_VALUES = 9;
+
+    private final int width;
+    private final int height;
+    private final int[] pixels;
+    private final float[] depth;
+    private final HierarchicalZBuffer hiZ;
+    private ObjectIdBuffer objectIds;
+
+    private boolean saved;
+    private Matrix4f view;
+    private Matrix4f projection;
+    private ObjectIdBuffer objectIdSource;
+    private float[] lights = new float[0];
+    // models drawn into the layer and their model matrices at that time
+    private final List<Model> models = new ArrayList<>();
+    private final List<Matrix4f> modelMatrices = new ArrayList<>();
+    private boolean recording;
+
+    StaticLayer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        pixels = new int[width * height];
+        depth = new float[width * height];
+        hiZ = new HierarchicalZBuffer(width, height);
+    }
+
+    /**
+     * View and projection are compared by identity, camera and projection replace their matrices on every change.
+     */
+    boolean isValid(Matrix4f view, Matrix4f projection, List<LightSource> lightSources, ObjectIdBuffer objectIdBuffer) {
+        return saved
+            && view == this.view
+            && projection == this.projection
+            && objectIdBuffer == objectIdSource
+            && Arrays.equals(lights, lightValues(lightSources))
+            && modelsUnchanged();
+    }
+
+    private boolean modelsUnchanged() {
+        for (int i = 0; i < models.size(); i++) {
+            if (models.get(i).getModel() != modelMatrices.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void invalidate() {
+        saved = false;
+    }
+
+    /**
+     * Starts collecting the models drawn until {@link #save} or {@link #stopRecording()}.
+     */
+    void startRecording() {
+        models.clear();
+        modelMatrices.clear();
+        recording = true;
+    }
+
+    void stopRecording() {
+        recording = false;
+    }
+
+    boolean isRecording() {
+        return recording;
+    }
+
+    void addModel(Model model) {
+        models.add(model);
+        modelMatrices.add(model.getModel());
+    }
+
+    void save(FrameBuffer frameBuffer, HierarchicalZBuffer frameHiZ, ObjectIdBuffer objectIdBuffer,
+              Matrix4f view, Matrix4f projection, List<LightSource> lightSources) {
+        System.arraycopy(frameBuffer.pixels, 0, pixels, 0, pixels.length);
+        System.arraycopy(frameBuffer.depth, 0, depth, 0, depth.length);
+        hiZ.copyFrom(frameHiZ);
+        if (objectIdBuffer != null) {
+            if (objectIds == null) {
+                objectIds = new ObjectIdBuffer(pixels.length);
+            }
+            objectIds.copyFrom(objectIdBuffer);
+        }
+        this.view = view;
+        this.projection = projection;
+        objectIdSource = objectIdBuffer;
+        lights = lightValues(lightSources);
+        recording = false;
+        saved = true;
+    }
+
+    void restore(FrameBuffer frameBuffer, HierarchicalZBuffer frameHiZ, ObjectIdBuffer objectIdBuffer) {
+        System.arraycopy(pixels, 0, frameBuffer.pixels, 0, pixels.length);
+        System.arraycopy(depth, 0, frameBuffer.depth, 0, depth.length);
+        frameHiZ.copyFrom(hiZ);
+        if (objectIdBuffer != null) {
+            objectIdBuffer.copyFrom(objectIds);
+        }
+    }
+
+    /**
+     * Restores colour, depth and object ids inside of the region only. Hierarchical depth is
+     * restored everywhere, outside of the region it may then be farther than the frame, never closer.
+     */
+    void restore(FrameBuffer frameBuffer, HierarchicalZBuffer frameHiZ, ObjectIdBuffer objectIdBuffer, DirtyRegion region) {
+        int rowLength = region.maxX - region.minX;
+        for (int y = region.minY; y < region.maxY; y++) {
+            int idx = y * width + region.minX;
+            int colorIdx = (height - 1 - y) * width + region.minX;
+            System.arraycopy(pixels, colorIdx, frameBuffer.pixels, colorIdx, rowLength);
+            System.arraycopy(depth, idx, frameBuffer.depth, idx, rowLength);
+            if (objectIdBuffer != null) {
+                System.arraycopy(objectIds.ids, idx, objectIdBuffer.ids, idx, rowLength);
+                System.arraycopy(objectIds.positionX, idx, objectIdBuffer.positionX, idx, rowLength);
+                System.arraycopy(objectIds.positionY, idx, objectIdBuffer.positionY, idx, rowLength);
+                System.arraycopy(objectIds.positionZ, idx, objectIdBuffer.positionZ, idx, rowLength);
+            }
+        }
+        frameHiZ.copyFrom(hiZ);
+    }
+
+    private static float[] lightValues(List<LightSource> lightSources) {
+        float[] values = new float[lightSources.size() * LIGHT_VALUES];
+        int i = 0;
+        for (LightSource lightSource : lightSources) {
+            values[i++] = lightSource.getColor().x;
+            values[i++] = lightSource.getColor().y;
+            values[i++] = lightSource.getColor().z;
+            values[i++] = lightSource.getColor().w;
+            values[i++] = lightSource.getPosition().x;
+            values[i++] = lightSource.getPosition().y;
+            values[i++] = lightSource.getPosition().z;
+            values[i++] = lightSource.getDiffuseIntensity();
+            values[i++] = lightSource.getSpecularIntensity();
+        }
+        return values;
+    }
+}
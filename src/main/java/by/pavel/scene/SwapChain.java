@@ -0,0 +1,54 @@
+package by.pavel.scene;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Frame buffers handed from the render thread to the thread showing them without locks.
+ * The renderer draws into the back buffer, the presenter shows the front buffer, and the
+ * third buffer holds the newest finished frame until the presenter picks it up.
+ */
+class SwapChain {
+
+    private static final int INDEX_MASK = 3;
+    private static final int FRESH = 4;
+
+    private final FrameBuffer[] buffers;
+    // index of the newest finished frame, with FRESH set until the presenter takes it
+    private final AtomicInteger ready = new AtomicInteger(2);
+    // owned by the render thread
+    private int back = 0;
+    // owned by the presenting thread
+    private int front = 1;
+
+    SwapChain(int width, int height) {
+        buffers = new FrameBuffer[] {
+            new FrameBuffer(width, height),
+            new FrameBuffer(width, height),
+            new FrameBuffer(width, height)
+        };
+    }
+
+    FrameBuffer getBackBuffer() {
+        return buffers[back];
+    }
+
+    /**
+     * Publishes the back buffer as the newest frame.
+     *
+     * @return the buffer to draw the next frame into
+     */
+    FrameBuffer present() {
+        back = ready.getAndSet(back | FRESH) & INDEX_MASK;
+        return buffers[back];
+    }
+
+    /**
+     * @return the newest finished frame, it is not drawn into until the next call
+     */
+    FrameBuffer acquireFront() {
+        if ((ready.get() & FRESH) != 0) {
+            front = ready.getAndSet(front) & INDEX_MASK;
+        }
+        return buffers[front];
+    }
+}
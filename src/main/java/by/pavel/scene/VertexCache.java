@@ -0,0 +1,82 @@
+package by.pavel.scene;
+
+import java.util.Arrays;
+
+import by.pavel.math.Matrix4f;
+
+/**
+ * Post-transform vertex data of the mesh being drawn. Every vertex and normal is transformed
+ * once per draw, triangles then read them by index. Arrays only grow, so drawing the same
+ * meshes frame after frame does not allocate. Instanced draws keep several
+ * transformed copies of one mesh side by side.
+ */
+class VertexCache {
+
+    // world space positions, xyz per vertex
+    float[] world = new float[0];
+    // screen x, screen y and clip z per vertex
+    float[] screen = new float[0];
+    // world space normals, xyz per normal
+    float[] normals = new float[0];
+    // matrix product of each copy, copies may be transformed on different threads
+    private float[][] products = new float[0][];
+
+    /**
+     * Makes room for the given number of transformed copies of the mesh.
+     */
+    void reserve(Mesh mesh, int copies) {
+        int positions = mesh.getPositions().length * copies;
+        if (world.length < positions) {
+            world = new float[positions];
+            screen = new float[positions];
+        }
+        int meshNormals = mesh.getNormals().length * copies;
+        if (normals.length < meshNormals) {
+            normals = new float[meshNormals];
+        }
+        if (products.length < copies) {
+            float[][] grown = Arrays.copyOf(products, copies);
+            for (int i = products.length; i < copies; i++) {
+                grown[i] = new float[4];
+            }
+            products = grown;
+        }
+    }
+
+    void transform(Mesh mesh, Matrix4f model, Matrix4f mvp, int width, int height) {
+        reserve(mesh, 1);
+        transform(mesh, model, mvp, width, height, 0);
+    }
+
+    /**
+     * Transforms the mesh into the given copy, copies of a reserved range may be transformed concurrently.
+     */
+    void transform(Mesh mesh, Matrix4f model, Matrix4f mvp, int width, int height, int copy) {
+        float[] result = products[copy];
+        float[] positions = mesh.getPositions();
+        int base = copy * positions.length;
+        for (int i = 0; i < positions.length; i += 3) {
+            float x = positions[i];
+            float y = positions[i + 1];
+            float z = positions[i + 2];
+            model.multiply(x, y, z, 1, result);
+            world[base + i] = result[0];
+            world[base + i + 1] = result[1];
+            world[base + i + 2] = result[2];
+            mvp.multiply(x, y, z, 1, result);
+            float w = result[3];
+            screen[base + i] = (result[0] / w * width / 2.f) + width / 2.f;
+            screen[base + i + 1] = (result[1] / w * height / 2.f) + height / 2.f;
+            screen[base + i + 2] = result[2];
+        }
+
+        float[] meshNormals = mesh.getNormals();
+        base = copy * meshNormals.length;
+        for (int i = 0; i < meshNormals.length; i += 3) {
+            model.multiply(meshNormals[i], meshNormals[i + 1], meshNormals[i + 2], 0, result);
+            normals[base + i] = result[0];
+            normals[base + i + 1] = result[1];
+            normals[base + i + 2] = result[2];
+        }
+    }
+}
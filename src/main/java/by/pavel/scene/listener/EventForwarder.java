@@ -0,0 +1,92 @@
+package by.pavel.scene.listener;
+
+import java.awt.event.KeyEvent;
+import java.awt.event.KeyListener;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseListener;
+import java.awt.event.MouseMotionListener;
+import java.util.EventListener;
+import java.util.concurrent.Executor;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Hands input events over to the executor of the thread owning the scene,
+ * so listeners never run concurrently with rendering.
+ */
+@RequiredArgsConstructor
+public class EventForwarder implements KeyListener, MouseListener, MouseMotionListener {
+
+    private final Executor executor;
+    private final EventListener listener;
+
+    @Override
+    public void keyTyped(KeyEvent e) {
+        if (listener instanceof KeyListener) {
+            executor.execute(() -> ((KeyListener) listener).keyTyped(e));
+        }
+    }
+
+    @Override
+    public void keyPressed(KeyEvent e) {
+        if (listener instanceof KeyListener) {
+            executor.execute(() -> ((KeyListener) listener).keyPressed(e));
+        }
+    }
+
+    @Override
+    public void keyReleased(KeyEvent e) {
+        if (listener instanceof KeyListener) {
+            executor.execute(() -> ((KeyListener) listener).keyReleased(e));
+        }
+    }
+
+    @Override
+    public void mouseDragged(MouseEvent e) {
+        if (listener instanceof MouseMotionListener) {
+            executor.execute(() -> ((MouseMotionListener) listener).mouseDragged(e));
+        }
+    }
+
+    @Override
+    public void mouseMoved(MouseEvent e) {
+        if (listener instanceof MouseMotionListener) {
+            executor.execute(() -> ((MouseMotionListener) listener).mouseMoved(e));
+        }
+    }
+
+    @Override
+    public void mouseClicked(MouseEvent e) {
+        if (listener instanceof MouseListener) {
+            executor.execute(() -> ((MouseListener) listener).mouseClicked(e));
+        }
+    }
+
+    @Override
+    public void mousePressed(MouseEvent e) {
+        if (listener instanceof MouseListener) {
+            executor.execute(() -> ((MouseListener) listener).mousePressed(e));
+        }
+    }
+
+    @Override
+    public void mouseReleased(MouseEvent e) {
+        if (listener instanceof MouseListener) {
+            executor.execute(() -> ((MouseListener) listener).mouseReleased(e));
+        }
+    }
+
+    @Override
+    public void mouseEntered(MouseEvent e) {
+        if (listener instanceof MouseListener) {
+            executor.execute(() -> ((MouseListener) listener).mouseEntered(e));
+        }
+    }
+
+    @Override
+    public void mouseExited(MouseEvent e) {
+        if (listener instanceof MouseListener) {
+            executor.execute(() -> ((MouseListener) listener).mouseExited(e));
+        }
+    }
+}
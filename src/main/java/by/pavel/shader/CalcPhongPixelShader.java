@@ -2,9 +2,9 @@ package by.pavel.shader;
 
 import static java.lang.Math.max;
 import static java.lang.Math.pow;
+import static java.lang.Math.sqrt;
 
-import static by.pavel.math.Vector3f.normalize3;
-import static by.pavel.math.Vector3f.reflect3;
+import static by.pavel.scene.ColorUtil.colorOf;
 
 import java.util.List;
 
@@ -20,29 +20,64 @@ public class CalcPhongPixelShader implements PixelShader {
     private static final float SHININESS = 10f;
 
     @Override
-    public Vector4f getPixelColor(Vector3f cameraPosition, PixelData pixelData) {
+    public int getPixelColor(Vector3f cameraPosition, PixelData pixelData) {
 
-        Vector4f pixelColor = pixelData.getPixelColor();
-        Vector3f pixelModelPosition = pixelData.getPixelModelPosition();
-        Vector3f pixelNormal = pixelData.getPixelNormal();
+        float px = pixelData.positionX;
+        float py = pixelData.positionY;
+        float pz = pixelData.positionZ;
+        float nx = pixelData.normalX;
+        float ny = pixelData.normalY;
+        float nz = pixelData.normalZ;
 
-        Vector4f ambientColor = pixelColor.mul(ambientness);
-        Vector4f diffuseColor = new Vector4f();
-        Vector4f specularColor = new Vector4f();
+        float red = pixelData.red * ambientness;
+        float green = pixelData.green * ambientness;
+        float blue = pixelData.blue * ambientness;
 
-        Vector3f pixelToCameraVector = normalize3(cameraPosition.minus(pixelModelPosition)); // V
-        for (LightSource lightSource : lightSources) {
-            Vector3f pixelToLightVector = normalize3(lightSource.getPosition().minus(pixelModelPosition));
-            Vector3f reflectedLightVector = normalize3(reflect3(pixelToLightVector, pixelNormal));// R
+        // V
+        float vx = cameraPosition.x - px;
+        float vy = cameraPosition.y - py;
+        float vz = cameraPosition.z - pz;
+        float vLength = (float) sqrt(vx * vx + vy * vy + vz * vz);
+        if (vLength != 0) {
+            vx /= vLength;
+            vy /= vLength;
+            vz /= vLength;
+        }
+
+        for (int i = 0; i < lightSources.size(); i++) {
+            LightSource lightSource = lightSources.get(i);
+            Vector3f lightPosition = lightSource.getPosition();
+            float lx = lightPosition.x - px;
+            float ly = lightPosition.y - py;
+            float lz = lightPosition.z - pz;
+            float lLength = (float) sqrt(lx * lx + ly * ly + lz * lz);
+            if (lLength != 0) {
+                lx /= lLength;
+                ly /= lLength;
+                lz /= lLength;
+            }
 
-            float diffuseCoeff = max(0, pixelNormal.dot(normalize3(pixelToLightVector))) * lightSource.getDiffuseIntensity();
-            float specularCoeff = max(0, (float) pow(pixelToCameraVector.dot(reflectedLightVector), SHININESS) * lightSource.getSpecularIntensity());
+            // R, reflection of the light vector, zero when the light is behind the surface
+            float lDotN = lx * nx + ly * ny + lz * nz;
+            float rDotV = 0;
+            if (lDotN > 0) {
+                float rx = lx - nx * lDotN * 2;
+                float ry = ly - ny * lDotN * 2;
+                float rz = lz - nz * lDotN * 2;
+                float rLength = (float) sqrt(rx * rx + ry * ry + rz * rz);
+                rDotV = rLength == 0 ? 0 : (rx * vx + ry * vy + rz * vz) / rLength;
+            }
 
-            diffuseColor = diffuseColor.plus(lightSource.getColor().mul(diffuseCoeff));
-            specularColor = specularColor.plus(lightSource.getColor().mul(specularCoeff));
+            float diffuseCoeff = max(0, lDotN) * lightSource.getDiffuseIntensity();
+            float specularCoeff = max(0, (float) pow(rDotV, SHININESS) * lightSource.getSpecularIntensity());
 
+            Vector4f lightColor = lightSource.getColor();
+            float coeff = diffuseCoeff + specularCoeff;
+            red += lightColor.x * coeff;
+            green += lightColor.y * coeff;
+            blue += lightColor.z * coeff;
         }
 
-        return ambientColor.plus(diffuseColor).plus(specularColor);
+        return colorOf(red, green, blue);
     }
 }
@@ -1,17 +1,12 @@
 package by.pavel.shader;
 
-import by.pavel.math.Vector3f;
-import by.pavel.math.Vector4f;
-import lombok.AllArgsConstructor;
-import lombok.Data;
-import lombok.NoArgsConstructor;
-
-@Data
-@AllArgsConstructor
-@NoArgsConstructor
+/**
+ * Interpolated attributes of a single pixel. One instance is reused for every pixel
+ * a rasterizer shades, so shaders must not keep a reference to it.
+ */
 public class PixelData {
-    private Vector3f pixelNormal;
-    private Vector3f pixelModelPosition;
-    private Vector4f pixelColor;
-    private Float specularCoefficient;
+    public float normalX, normalY, normalZ;
+    public float positionX, positionY, positionZ;
+    public float red, green, blue;
+    public float specularCoefficient = 1;
 }
@@ -1,9 +1,11 @@
 package by.pavel.shader;
 
 import by.pavel.math.Vector3f;
-import by.pavel.math.Vector4f;
-import by.pavel.scene.Model;
 
 public interface PixelShader {
-    Vector4f getPixelColor(Vector3f cameraPosition, PixelData pixelData);
+
+    /**
+     * @return packed ARGB colour of the pixel, see {@link by.pavel.scene.ColorUtil#colorOf(float, float, float)}
+     */
+    int getPixelColor(Vector3f cameraPosition, PixelData pixelData);
 }
@@ -1,12 +1,13 @@
 package by.pavel.shader;
 
+import static by.pavel.scene.ColorUtil.colorOf;
+
 import by.pavel.math.Vector3f;
-import by.pavel.math.Vector4f;
 
 public class TexturePixelShader implements PixelShader {
 
     @Override
-    public Vector4f getPixelColor(Vector3f cameraPosition, PixelData pixelData) {
-        return null;
+    public int getPixelColor(Vector3f cameraPosition, PixelData pixelData) {
+        return colorOf(pixelData.red, pixelData.green, pixelData.blue);
     }
 }
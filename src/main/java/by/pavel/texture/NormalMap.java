@@ -0,0 +1,171 @@
+package by.pavel.texture;
+
+import java.awt.image.Raster;
+
+/**
+ * Tangent space normals stored as unit vectors, three floats per texel, with their mip chain.
+ * Filtered normals are blends of unit vectors and have to be normalized by the caller.
+ */
+public class NormalMap extends TextureMap {
+
+    private final float[][] levels;
+
+    public NormalMap(int width, int height, float[] normals) {
+        this(width, height, normals, TextureLayout.LINEAR);
+    }
+
+    /**
+     * Builds the mip chain of the normals right away, each level averages 2x2 normals of the previous one.
+     *
+     * @param normals row after row, the layout only changes how they are stored
+     */
+    public NormalMap(int width, int height, float[] normals, TextureLayout layout) {
+        super(width, height, layout);
+        if (normals.length != width * height * 3) {
+            throw new IllegalArgumentException("Expected " + width * height * 3 + " normal components: " + normals.length);
+        }
+        levels = new float[levelWidths.length][];
+        float[] linear = normals;
+        levels[0] = arrange(0, linear, 3);
+        for (int level = 1; level < levels.length; level++) {
+            linear = downsample(linear, levelWidths[level - 1], levelHeights[level - 1],
+                levelWidths[level], levelHeights[level]);
+            levels[level] = arrange(level, linear, 3);
+        }
+    }
+
+    @Override
+    public long getSizeBytes() {
+        long bytes = 0;
+        for (float[] level : levels) {
+            bytes += level.length * 4L;
+        }
+        return bytes;
+    }
+
+    /**
+     * Converts the first three bands of the raster from [0, 255] to unit vectors.
+     */
+    public static NormalMap of(Raster raster) {
+        return of(raster, TextureLayout.LINEAR);
+    }
+
+    /**
+     * Converts the first three bands of the raster from [0, 255] to unit vectors in the layout.
+     */
+    public static NormalMap of(Raster raster, TextureLayout layout) {
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        int bands = raster.getNumBands();
+        if (bands < 3) {
+            throw new IllegalArgumentException("Normal map needs 3 bands: " + bands);
+        }
+        int[] samples = raster.getPixels(raster.getMinX(), raster.getMinY(), width, height, (int[]) null);
+        float[] normals = new float[width * height * 3];
+        for (int i = 0, s = 0; i < normals.length; i += 3, s += bands) {
+            normalize(normals, i, samples[s] * 2 - 256f, samples[s + 1] * 2 - 256f, samples[s + 2] * 2 - 256f);
+        }
+        return new NormalMap(width, height, normals, layout);
+    }
+
+    private static float[] downsample(float[] source, int sourceWidth, int sourceHeight, int width, int height) {
+        float[] normals = new float[width * height * 3];
+        for (int y = 0; y < height; y++) {
+            int row0 = Math.min(y * 2, sourceHeight - 1) * sourceWidth;
+            int row1 = Math.min(y * 2 + 1, sourceHeight - 1) * sourceWidth;
+            for (int x = 0; x < width; x++) {
+                int i00 = (row0 + Math.min(x * 2, sourceWidth - 1)) * 3;
+                int i10 = (row0 + Math.min(x * 2 + 1, sourceWidth - 1)) * 3;
+                int i01 = (row1 + Math.min(x * 2, sourceWidth - 1)) * 3;
+                int i11 = (row1 + Math.min(x * 2 + 1, sourceWidth - 1)) * 3;
+                normalize(normals, (y * width + x) * 3,
+                    source[i00] + source[i10] + source[i01] + source[i11],
+                    source[i00 + 1] + source[i10 + 1] + source[i01 + 1] + source[i11 + 1],
+                    source[i00 + 2] + source[i10 + 2] + source[i01 + 2] + source[i11 + 2]);
+            }
+        }
+        return normals;
+    }
+
+    private static void normalize(float[] normals, int i, float x, float y, float z) {
+        float length = (float) Math.sqrt(x * x + y * y + z * z);
+        if (length != 0) {
+            x /= length;
+            y /= length;
+            z /= length;
+        }
+        normals[i] = x;
+        normals[i + 1] = y;
+        normals[i + 2] = z;
+    }
+
+    /**
+     * Writes the nearest full resolution normal to result[0..2].
+     */
+    public void sample(float u, float v, float[] result) {
+        int i = texelIndex(u, v) * 3;
+        float[] normals = levels[0];
+        result[0] = normals[i];
+        result[1] = normals[i + 1];
+        result[2] = normals[i + 2];
+    }
+
+    /**
+     * Writes the filtered normal at the texture coordinates to result[0..2].
+     *
+     * @param lod level of detail, see {@link #lod}
+     */
+    public void sample(float u, float v, float lod, TextureFilter filter, float[] result) {
+        switch (filter) {
+            case BILINEAR:
+                bilinear(nearestLevel(lod), u, v, 1, result, false);
+                break;
+            case TRILINEAR:
+                int last = levels.length - 1;
+                if (lod <= 0) {
+                    bilinear(0, u, v, 1, result, false);
+                } else if (lod >= last) {
+                    bilinear(last, u, v, 1, result, false);
+                } else {
+                    int level = (int) lod;
+                    float f = lod - level;
+                    bilinear(level, u, v, 1 - f, result, false);
+                    bilinear(level + 1, u, v, f, result, true);
+                }
+                break;
+            default:
+                sample(u, v, result);
+        }
+    }
+
+    /**
+     * Writes, or with add adds, the bilinear sample of the level times the weight to result.
+     */
+    private void bilinear(int level, float u, float v, float weight, float[] result, boolean add) {
+        int width = levelWidths[level];
+        int height = levelHeights[level];
+        float x = u * width - 0.5f;
+        float y = (1 - v) * height - 0.5f;
+        int x0 = (int) Math.floor(x);
+        int y0 = (int) Math.floor(y);
+        float fx = x - x0;
+        float fy = y - y0;
+        int column0 = address(x0, width);
+        int column1 = address(x0 + 1, width);
+        int row0 = address(y0, height);
+        int row1 = address(y0 + 1, height);
+        float[] normals = levels[level];
+        int i00 = texel(level, column0, row0) * 3;
+        int i10 = texel(level, column1, row0) * 3;
+        int i01 = texel(level, column0, row1) * 3;
+        int i11 = texel(level, column1, row1) * 3;
+        float w00 = (1 - fx) * (1 - fy) * weight;
+        float w10 = fx * (1 - fy) * weight;
+        float w01 = (1 - fx) * fy * weight;
+        float w11 = fx * fy * weight;
+        for (int c = 0; c < 3; c++) {
+            float value = normals[i00 + c] * w00 + normals[i10 + c] * w10 + normals[i01 + c] * w01 + normals[i11 + c] * w11;
+            result[c] = add ? result[c] + value : value;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package by.pavel.texture;
+
+import java.awt.image.Raster;
+
+/**
+ * Colour texture stored as packed ARGB ints, with its mip chain.
+ */
+public class Texture extends TextureMap {
+
+    private final int[][] levels;
+
+    public Texture(int width, int height, int[] texels) {
+        this(width, height, texels, TextureLayout.LINEAR);
+    }
+
+    /**
+     * Builds the mip chain of the texels right away, each level averages 2x2 texels of the previous one.
+     *
+     * @param texels row after row, the layout only changes how they are stored
+     */
+    public Texture(int width, int height, int[] texels, TextureLayout layout) {
+        super(width, height, layout);
+        if (texels.length != width * height) {
+            throw new IllegalArgumentException("Expected " + width * height + " texels: " + texels.length);
+        }
+        levels = new int[levelWidths.length][];
+        int[] linear = texels;
+        levels[0] = arrange(0, linear);
+        for (int level = 1; level < levels.length; level++) {
+            linear = downsample(linear, levelWidths[level - 1], levelHeights[level - 1],
+                levelWidths[level], levelHeights[level]);
+            levels[level] = arrange(level, linear);
+        }
+    }
+
+    @Override
+    public long getSizeBytes() {
+        long bytes = 0;
+        for (int[] level : levels) {
+            bytes += level.length * 4L;
+        }
+        return bytes;
+    }
+
+    /**
+     * Packs the bands of the raster, 1 band is grey, a missing alpha band is opaque.
+     */
+    public static Texture of(Raster raster) {
+        return of(raster, TextureLayout.LINEAR);
+    }
+
+    /**
+     * Packs the bands of the raster into the layout, 1 band is grey, a missing alpha band is opaque.
+     */
+    public static Texture of(Raster raster, TextureLayout layout) {
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        int bands = raster.getNumBands();
+        int[] samples = raster.getPixels(raster.getMinX(), raster.getMinY(), width, height, (int[]) null);
+        int[] texels = new int[width * height];
+        for (int i = 0, s = 0; i < texels.length; i++, s += bands) {
+            int red = samples[s];
+            int green = bands > 1 ? samples[s + 1] : red;
+            int blue = bands > 2 ? samples[s + 2] : red;
+            int alpha = bands > 3 ? samples[s + 3] : 255;
+            texels[i] = alpha << 24 | red << 16 | green << 8 | blue;
+        }
+        return new Texture(width, height, texels, layout);
+    }
+
+    private static int[] downsample(int[] source, int sourceWidth, int sourceHeight, int width, int height) {
+        int[] texels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            int row0 = Math.min(y * 2, sourceHeight - 1) * sourceWidth;
+            int row1 = Math.min(y * 2 + 1, sourceHeight - 1) * sourceWidth;
+            for (int x = 0; x < width; x++) {
+                int x0 = Math.min(x * 2, sourceWidth - 1);
+                int x1 = Math.min(x * 2 + 1, sourceWidth - 1);
+                texels[y * width + x] = blend(source[row0 + x0], source[row0 + x1], source[row1 + x0], source[row1 + x1],
+                    0.5f, 0.5f);
+            }
+        }
+        return texels;
+    }
+
+    /**
+     * @return ARGB colour of the nearest full resolution texel
+     */
+    public int sample(float u, float v) {
+        return levels[0][texelIndex(u, v)];
+    }
+
+    /**
+     * @param lod level of detail, see {@link #lod}
+     * @return filtered ARGB colour at the texture coordinates
+     */
+    public int sample(float u, float v, float lod, TextureFilter filter) {
+        switch (filter) {
+            case BILINEAR:
+                return bilinear(nearestLevel(lod), u, v);
+            case TRILINEAR:
+                int last = levels.length - 1;
+                if (lod <= 0) {
+                    return bilinear(0, u, v);
+                }
+                if (lod >= last) {
+                    return bilinear(last, u, v);
+                }
+                int level = (int) lod;
+                return lerp(bilinear(level, u, v), bilinear(level + 1, u, v), lod - level);
+            default:
+                return sample(u, v);
+        }
+    }
+
+    private int bilinear(int level, float u, float v) {
+        int width = levelWidths[level];
+        int height = levelHeights[level];
+        float x = u * width - 0.5f;
+        float y = (1 - v) * height - 0.5f;
+        int x0 = (int) Math.floor(x);
+        int y0 = (int) Math.floor(y);
+        float fx = x - x0;
+        float fy = y - y0;
+        int column0 = address(x0, width);
+        int column1 = address(x0 + 1, width);
+        int row0 = address(y0, height);
+        int row1 = address(y0 + 1, height);
+        int[] texels = levels[level];
+        return blend(texels[texel(level, column0, row0)], texels[texel(level, column1, row0)],
+            texels[texel(level, column0, row1)], texels[texel(level, column1, row1)], fx, fy);
+    }
+
+    private static int blend(int c00, int c10, int c01, int c11, float fx, float fy) {
+        float w00 = (1 - fx) * (1 - fy);
+        float w10 = fx * (1 - fy);
+        float w01 = (1 - fx) * fy;
+        float w11 = fx * fy;
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+            float channel = (c00 >>> shift & 0xff) * w00 + (c10 >>> shift & 0xff) * w10
+                + (c01 >>> shift & 0xff) * w01 + (c11 >>> shift & 0xff) * w11;
+            result |= (int) (channel + 0.5f) << shift;
+        }
+        return result;
+    }
+
+    private static int lerp(int c0, int c1, float f) {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+            float channel = (c0 >>> shift & 0xff) * (1 - f) + (c1 >>> shift & 0xff) * f;
+            result |= (int) (channel + 0.5f) << shift;
+        }
+        return result;
+    }
+}
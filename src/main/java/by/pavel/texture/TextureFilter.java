@@ -0,0 +1,19 @@
+package by.pavel.texture;
+
+/**
+ * How textures are sampled.
+ */
+public enum TextureFilter {
+    /**
+     * Nearest texel of the full resolution level.
+     */
+    NEAREST,
+    /**
+     * Bilinear blend of four texels of the mip level closest to the pixel footprint.
+     */
+    BILINEAR,
+    /**
+     * Bilinear samples of the two mip levels around the pixel footprint, blended.
+     */
+    TRILINEAR
+}
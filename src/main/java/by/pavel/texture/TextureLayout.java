@@ -0,0 +1,16 @@
+package by.pavel.texture;
+
+/**
+ * Order of the texels in memory.
+ */
+public enum TextureLayout {
+    /**
+     * Row after row like in the image, neighbours in a column are a row apart.
+     */
+    LINEAR,
+    /**
+     * 4x4 texel tiles stored one after another, row after row of tiles. A tile of ARGB texels is
+     * 64 bytes, one cache line, so samples walking in any direction stay within a few lines.
+     */
+    TILED
+}
@@ -0,0 +1,165 @@
+package by.pavel.texture;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Texels decoded once into flat arrays, rows go top to bottom like in the image.
+ * Every level of the mip chain halves the size of the previous one down to 1x1.
+ * Nearest sampling maps texture coordinates like it always did: u = 1 is the last column,
+ * v = 1 the first row. Filtered sampling treats texels as squares with the sample point
+ * in their centre. With {@link TextureLayout#TILED} levels are padded to whole tiles and
+ * texels are found through {@link #texel}.
+ */
+public abstract class TextureMap {
+
+    private static final int TILE_BITS = 2;
+    private static final int TILE_MASK = (1 << TILE_BITS) - 1;
+
+    @Getter
+    protected final int width;
+    @Getter
+    protected final int height;
+    protected final int[] levelWidths;
+    protected final int[] levelHeights;
+    // tiles in a row of every level, only used by the tiled layout
+    private final int[] levelTileColumns;
+    @Getter
+    private final TextureLayout layout;
+    private final int maxX;
+    private final int maxY;
+    @Getter
+    @Setter
+    private TextureWrap wrap = TextureWrap.CLAMP;
+
+    protected TextureMap(int width, int height, TextureLayout layout) {
+        if (width < 1 || height < 1) {
+            throw new IllegalArgumentException("Texture must have texels: " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.layout = layout;
+        maxX = width - 1;
+        maxY = height - 1;
+        int levels = 32 - Integer.numberOfLeadingZeros(Math.max(width, height));
+        levelWidths = new int[levels];
+        levelHeights = new int[levels];
+        levelTileColumns = new int[levels];
+        for (int level = 0; level < levels; level++) {
+            levelWidths[level] = Math.max(1, width >> level);
+            levelHeights[level] = Math.max(1, height >> level);
+            levelTileColumns[level] = (levelWidths[level] + TILE_MASK) >> TILE_BITS;
+        }
+    }
+
+    public int getLevels() {
+        return levelWidths.length;
+    }
+
+    /**
+     * @return bytes of the texel arrays of all levels
+     */
+    public abstract long getSizeBytes();
+
+    /**
+     * @return index of the full resolution texel at the texture coordinates
+     */
+    public int texelIndex(float u, float v) {
+        if (wrap == TextureWrap.REPEAT) {
+            u -= (float) Math.floor(u);
+            v -= (float) Math.floor(v);
+        }
+        int x = Math.min(Math.max((int) (u * maxX), 0), maxX);
+        int y = Math.min(Math.max((int) ((1 - v) * maxY), 0), maxY);
+        return texel(0, x, y);
+    }
+
+    /**
+     * @return index of the texel in the array of the level
+     */
+    protected int texel(int level, int x, int y) {
+        if (layout == TextureLayout.TILED) {
+            return ((y >> TILE_BITS) * levelTileColumns[level] + (x >> TILE_BITS)) << 2 * TILE_BITS
+                | (y & TILE_MASK) << TILE_BITS | x & TILE_MASK;
+        }
+        return y * levelWidths[level] + x;
+    }
+
+    /**
+     * Reorders a level from row after row into the layout of this map.
+     */
+    protected int[] arrange(int level, int[] texels) {
+        if (layout == TextureLayout.LINEAR) {
+            return texels;
+        }
+        int[] arranged = new int[paddedSize(level)];
+        int width = levelWidths[level];
+        for (int y = 0; y < levelHeights[level]; y++) {
+            for (int x = 0; x < width; x++) {
+                arranged[texel(level, x, y)] = texels[y * width + x];
+            }
+        }
+        return arranged;
+    }
+
+    /**
+     * Reorders a level from row after row into the layout of this map.
+     *
+     * @param components values per texel
+     */
+    protected float[] arrange(int level, float[] values, int components) {
+        if (layout == TextureLayout.LINEAR) {
+            return values;
+        }
+        float[] arranged = new float[paddedSize(level) * components];
+        int width = levelWidths[level];
+        for (int y = 0; y < levelHeights[level]; y++) {
+            for (int x = 0; x < width; x++) {
+                System.arraycopy(values, (y * width + x) * components, arranged, texel(level, x, y) * components, components);
+            }
+        }
+        return arranged;
+    }
+
+    private int paddedSize(int level) {
+        int tileRows = (levelHeights[level] + TILE_MASK) >> TILE_BITS;
+        return levelTileColumns[level] * tileRows << 2 * TILE_BITS;
+    }
+
+    /**
+     * Level of detail from the screen derivatives of the texture coordinates, 0 is the full
+     * resolution level, every 1 more halves it. Negative when the texture is magnified.
+     */
+    public float lod(float dudx, float dvdx, float dudy, float dvdy) {
+        float xu = dudx * width;
+        float xv = dvdx * height;
+        float yu = dudy * width;
+        float yv = dvdy * height;
+        return 0.5f * log2(Math.max(xu * xu + xv * xv, yu * yu + yv * yv));
+    }
+
+    /**
+     * @return texel coordinate of a level of the given size, wrapped or clamped
+     */
+    protected int address(int coordinate, int size) {
+        if (wrap == TextureWrap.REPEAT) {
+            return Math.floorMod(coordinate, size);
+        }
+        return Math.min(Math.max(coordinate, 0), size - 1);
+    }
+
+    /**
+     * @return level to sample with bilinear filtering, the one closest to the level of detail
+     */
+    protected int nearestLevel(float lod) {
+        return Math.min(Math.max((int) (lod + 0.5f), 0), levelWidths.length - 1);
+    }
+
+    /**
+     * Rough log2 from the float bits, exact at powers of two and off by less than 0.09 in between.
+     */
+    static float log2(float x) {
+        int bits = Float.floatToRawIntBits(x);
+        return ((bits >> 23) & 0xff) - 127 + (bits & 0x7fffff) / (float) (1 << 23);
+    }
+}
@@ -0,0 +1,15 @@
+package by.pavel.texture;
+
+/**
+ * Addressing of texture coordinates outside of [0, 1].
+ */
+public enum TextureWrap {
+    /**
+     * Coordinates wrap around, the texture tiles.
+     */
+    REPEAT,
+    /**
+     * Coordinates stick to the edge texels.
+     */
+    CLAMP
+}
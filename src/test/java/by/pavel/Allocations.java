@@ -0,0 +1,139 @@
+package by.pavel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Checks that code allocates nothing once it is warm.
+ */
+public final class Allocations {
+
+    // windows in a row allocating the same and without the JIT compiling anything before measuring starts,
+    // for long enough that compilations queued before them have finished
+    private static final int SETTLED_WINDOWS = 5;
+    private static final long SETTLED_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final long MAX_WARMUP_NANOS = TimeUnit.SECONDS.toNanos(30);
+    private static final int MEASURED_WINDOWS = 10;
+
+    private Allocations() {
+    }
+
+    /**
+     * Fails unless every measured window of the given number of runs of the action allocates nothing on the calling
+     * thread.
+     *
+     * @see #assertNoAllocations(String, int, Runnable)
+     */
+    public static void assertNoAllocations(int runsPerWindow, Runnable action) {
+        assertNoAllocations(null, runsPerWindow, action);
+    }
+
+    /**
+     * Runs the action in windows of the given number of runs until the JIT has settled, then fails unless each of
+     * {@value #MEASURED_WINDOWS} further windows allocates nothing, on the calling thread or on the threads whose
+     * names start with the given prefix. Compiling and deoptimizing the code may allocate a few bytes on the thread,
+     * which is why warming up waits for the compilers to go quiet.
+     *
+     * @param threadNamePrefix threads the action hands work to, or null
+     */
+    public static void assertNoAllocations(String threadNamePrefix, int runsPerWindow, Runnable action) {
+        Meter meter = new Meter(threadNamePrefix);
+        CompilationMXBean compilation = ManagementFactory.getCompilationMXBean();
+        boolean compilationTimed = compilation != null && compilation.isCompilationTimeMonitoringSupported();
+
+        long warmupStart = System.nanoTime();
+        long settledBytes = -1;
+        long settledSince = warmupStart;
+        int settled = 0;
+        while (settled < SETTLED_WINDOWS || System.nanoTime() - settledSince < SETTLED_NANOS) {
+            if (System.nanoTime() - warmupStart > MAX_WARMUP_NANOS) {
+                break;
+            }
+            long compiling = compilationTimed ? compilation.getTotalCompilationTime() : 0;
+            long bytes = meter.allocatedBytes(runsPerWindow, action);
+            boolean compiled = compilationTimed && compilation.getTotalCompilationTime() != compiling;
+            if (bytes != settledBytes || compiled) {
+                settled = 0;
+                settledSince = System.nanoTime();
+            } else {
+                settled++;
+            }
+            settledBytes = bytes;
+        }
+        for (int window = 0; window < MEASURED_WINDOWS; window++) {
+            assertEquals(0, meter.allocatedBytes(runsPerWindow, action),
+                "bytes allocated by " + runsPerWindow + " runs in measured window " + window);
+        }
+    }
+
+    /**
+     * Bytes allocated by the calling thread and the matching other threads.
+     */
+    private static final class Meter {
+
+        private final ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        private final long thread = Thread.currentThread().getId();
+        private final String threadNamePrefix;
+        private Thread[] others = new Thread[16];
+        private long[] otherIds = new long[16];
+        private long[] otherBefore = new long[16];
+
+        Meter(String threadNamePrefix) {
+            assertTrue(threads.isThreadAllocatedMemorySupported());
+            threads.setThreadAllocatedMemoryEnabled(true);
+            this.threadNamePrefix = threadNamePrefix;
+            // the first query allocates on some JVMs, so the baseline is taken after one
+            threads.getThreadAllocatedBytes(thread);
+        }
+
+        /**
+         * Querying other threads allocates on the calling thread, so they are queried outside of its window.
+         */
+        long allocatedBytes(int runs, Runnable action) {
+            int count = findOthers();
+            for (int i = 0; i < count; i++) {
+                otherBefore[i] = threads.getThreadAllocatedBytes(otherIds[i]);
+            }
+            long before = threads.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < runs; i++) {
+                action.run();
+            }
+            long bytes = threads.getThreadAllocatedBytes(thread) - before;
+            for (int i = 0; i < count; i++) {
+                long after = threads.getThreadAllocatedBytes(otherIds[i]);
+                // a thread that ended during the window reports -1
+                if (after >= 0 && otherBefore[i] >= 0) {
+                    bytes += after - otherBefore[i];
+                }
+            }
+            return bytes;
+        }
+
+        private int findOthers() {
+            if (threadNamePrefix == null) {
+                return 0;
+            }
+            while (Thread.enumerate(others) == others.length) {
+                others = new Thread[others.length * 2];
+            }
+            int all = Thread.enumerate(others);
+            if (otherIds.length < all) {
+                otherIds = new long[others.length];
+                otherBefore = new long[others.length];
+            }
+            int count = 0;
+            for (int i = 0; i < all; i++) {
+                if (others[i].getName().startsWith(threadNamePrefix)) {
+                    otherIds[count++] = others[i].getId();
+                }
+            }
+            return count;
+        }
+    }
+}
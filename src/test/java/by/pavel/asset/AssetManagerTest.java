@@ -0,0 +1,204 @@
+package by.pavel.asset;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import by.pavel.math.Matrix4f;
+import by.pavel.math.Vector3f;
+import by.pavel.scene.Model;
+import by.pavel.texture.Texture;
+
+class AssetManagerTest {
+
+    private static final String CUBE = "src/main/resources/cube.obj";
+    private static final String SPHERE = "src/main/resources/sphere.obj";
+    private static final String STONES = "src/main/resources/stones.png";
+    private static final int BLOB_BYTES = 10_000;
+
+    @TempDir
+    Path directory;
+
+    // loads of every file by the blob loader
+    private final Map<String, AtomicInteger> loads = new ConcurrentHashMap<>();
+    private final AssetLoader<byte[]> blobs = new AssetLoader<>() {
+        @Override
+        public byte[] load(File file) {
+            loads.computeIfAbsent(file.getName(), name -> new AtomicInteger()).incrementAndGet();
+            return new byte[BLOB_BYTES];
+        }
+
+        @Override
+        public long sizeBytes(byte[] blob) {
+            return blob.length;
+        }
+    };
+
+    @BeforeAll
+    static void headless() {
+        System.setProperty("java.awt.headless", "true");
+    }
+
+    @Test
+    void modelsOfTheSameFilesShareOneMeshAndTexture() {
+        AssetManager assets = new AssetManager();
+
+        Model first = load(assets, CUBE, STONES);
+        Model second = load(assets, CUBE, STONES);
+
+        assertSame(first.getMesh(), second.getMesh());
+        assertSame(first.getTexture(), second.getTexture());
+        // obj, mesh and texture, the empty paths are not cached
+        assertEquals(3, assets.getEntryCount());
+        assertEquals(3, assets.getMisses());
+        assertEquals(3, assets.getHits());
+    }
+
+    @Test
+    void keepsAssetsUntilTheLastModelIsReleased() {
+        AssetManager assets = new AssetManager(0);
+        Model first = load(assets, CUBE, STONES);
+        Model second = load(assets, CUBE, STONES);
+
+        first.release();
+        first.release();
+        assertEquals(3, assets.getEntryCount());
+
+        second.release();
+        assertEquals(0, assets.getEntryCount());
+        assertEquals(0, assets.getUsedBytes());
+    }
+
+    @Test
+    void evictsReleasedAssetsLeastRecentlyUsedFirst() {
+        // room for two blobs but not for three
+        AssetManager assets = new AssetManager(BLOB_BYTES * 5 / 2);
+        Asset<byte[]> a = assets.get("blob", "a", blobs);
+        Asset<byte[]> b = assets.get("blob", "b", blobs);
+        Asset<byte[]> c = assets.get("blob", "c", blobs);
+        assertEquals(3, assets.getEntryCount());
+
+        a.release();
+        b.release();
+        assertEquals(2, assets.getEntryCount());
+        assets.get("blob", "b", blobs).release();
+        c.release();
+        assets.get("blob", "a", blobs).release();
+
+        assertEquals(2, assets.getEntryCount());
+        assertEquals(2, loads.get("a").get());
+        assertEquals(1, loads.get("b").get());
+        assertEquals(1, loads.get("c").get());
+        assertTrue(assets.getUsedBytes() <= assets.getBudgetBytes());
+    }
+
+    @Test
+    void cachesMissingFilesUntilInvalidated() throws IOException {
+        AssetManager assets = new AssetManager();
+        String path = directory.resolve("texture.png").toString();
+
+        assertTrue(assets.texture(path).isMissing());
+        assertTrue(assets.texture(path).isMissing());
+        assertEquals(1, assets.getMisses());
+        assertEquals(1, assets.getHits());
+
+        Files.copy(Paths.get(STONES), Paths.get(path));
+        assertTrue(assets.texture(path).isMissing());
+        assets.invalidate("texture", path);
+        assertFalse(assets.texture(path).isMissing());
+        assertEquals(2, assets.getMisses());
+    }
+
+    @Test
+    void failsRequestsWithTheLoaderExceptionAndDoesNotCacheIt() {
+        AssetManager assets = new AssetManager();
+        IOException failure = new IOException("broken");
+        AtomicInteger attempts = new AtomicInteger();
+        AssetLoader<Texture> broken = new AssetLoader<>() {
+            @Override
+            public Texture load(File file) throws IOException {
+                attempts.incrementAndGet();
+                throw failure;
+            }
+
+            @Override
+            public long sizeBytes(Texture texture) {
+                return 0;
+            }
+        };
+
+        CompletionException first = assertThrows(CompletionException.class, () -> assets.get("texture", STONES, broken));
+        CompletionException async = assertThrows(CompletionException.class,
+            () -> assets.getAsync("texture", STONES, broken).join());
+
+        assertSame(failure, first.getCause());
+        assertSame(failure, async.getCause());
+        assertEquals(2, attempts.get());
+        assertEquals(0, assets.getEntryCount());
+    }
+
+    @Test
+    void modelsFailWithTheCauseAndReleaseWhatDidLoad() {
+        AssetManager assets = new AssetManager(0);
+
+        // an obj file is not an image
+        IllegalArgumentException failure = assertThrows(IllegalArgumentException.class, () -> load(assets, CUBE, CUBE));
+        CompletionException asyncFailure = assertThrows(CompletionException.class, () -> Model.loadAsync(
+            Matrix4f.translation(new Vector3f(0, 0, 0)),
+            Matrix4f.rotation(new Vector3f(0, 0, 0)),
+            Matrix4f.scale(new Vector3f(1, 1, 1)),
+            assets, CUBE, CUBE, null, null).join());
+
+        assertInstanceOf(IOException.class, failure.getCause());
+        assertInstanceOf(IllegalArgumentException.class, asyncFailure.getCause());
+        assertInstanceOf(IOException.class, asyncFailure.getCause().getCause());
+        assertEquals(0, assets.getEntryCount());
+    }
+
+    @Test
+    void makesTheMeshAgainFromAReloadedObj() throws IOException {
+        AssetManager assets = new AssetManager();
+        String path = directory.resolve("model.obj").toString();
+
+        assertThrows(IllegalArgumentException.class, () -> load(assets, path, null));
+        // only the missing obj is cached, not a mesh made from it
+        assertEquals(1, assets.getEntryCount());
+
+        Files.copy(Paths.get(CUBE), Paths.get(path));
+        assets.invalidate("obj", path);
+        Model cube = load(assets, path, null);
+
+        Files.copy(Paths.get(SPHERE), Paths.get(path), StandardCopyOption.REPLACE_EXISTING);
+        assets.invalidate("obj", path);
+        Model sphere = load(assets, path, null);
+
+        assertNotEquals(cube.getMesh().getTrianglesSizeBytes(), sphere.getMesh().getTrianglesSizeBytes());
+    }
+
+    private static Model load(AssetManager assets, String objPath, String texturePath) {
+        return Model.load(
+            Matrix4f.translation(new Vector3f(0, 0, 0)),
+            Matrix4f.rotation(new Vector3f(0, 0, 0)),
+            Matrix4f.scale(new Vector3f(1, 1, 1)),
+            assets, objPath, texturePath, null, null);
+    }
+}
@@ -0,0 +1,141 @@
+package by.pavel.parser;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import by.pavel.math.Vector2f;
+import by.pavel.math.Vector3f;
+import by.pavel.math.Vector3i;
+import by.pavel.math.Vector4f;
+
+/**
+ * Every bundled obj file must parse to the same values with {@link MappedOBJParser} as with {@link OBJParser},
+ * in one go and split into chunks parsed in parallel.
+ */
+class MappedOBJParserTest {
+
+    private static final Path RESOURCES = Paths.get("src/main/resources");
+    // OBJParser fails on the double spaces between the numbers of this file
+    private static final Path UNREADABLE_BY_OBJ_PARSER = RESOURCES.resolve("models/model.obj");
+    // small enough to split even the smallest files into several chunks
+    private static final int CHUNK_BYTES = 16;
+
+    private static ForkJoinPool pool;
+
+    @BeforeAll
+    static void startPool() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterAll
+    static void stopPool() {
+        pool.shutdown();
+    }
+
+    static Stream<Path> objFiles() throws IOException {
+        try (Stream<Path> files = Files.walk(RESOURCES)) {
+            List<Path> objFiles = files
+                .filter(file -> file.getFileName().toString().toLowerCase().endsWith(".obj"))
+                .sorted()
+                .collect(Collectors.toList());
+            return objFiles.stream();
+        }
+    }
+
+    static Stream<Path> objFilesReadableByOBJParser() throws IOException {
+        return objFiles().filter(file -> !file.equals(UNREADABLE_BY_OBJ_PARSER));
+    }
+
+    @ParameterizedTest
+    @MethodSource("objFilesReadableByOBJParser")
+    void parsesLikeOBJParser(Path file) {
+        assertParsedLikeOBJParser(file, new MappedOBJParser());
+    }
+
+    @ParameterizedTest
+    @MethodSource("objFilesReadableByOBJParser")
+    void parsesChunksLikeOBJParser(Path file) {
+        assertParsedLikeOBJParser(file, new MappedOBJParser(pool, CHUNK_BYTES));
+    }
+
+    @ParameterizedTest
+    @MethodSource("objFiles")
+    void parsesChunksLikeWholeFile(Path file) {
+        OBJArrays expected = new MappedOBJParser().parseFile(file.toString());
+        OBJArrays actual = new MappedOBJParser(pool, CHUNK_BYTES).parseFile(file.toString());
+
+        assertArrayEquals(expected.getPositions(), actual.getPositions(), "positions");
+        assertArrayEquals(expected.getUvs(), actual.getUvs(), "uvs");
+        assertArrayEquals(expected.getNormals(), actual.getNormals(), "normals");
+        assertArrayEquals(expected.getVertexParams(), actual.getVertexParams(), "vertex params");
+        assertArrayEquals(expected.getCorners(), actual.getCorners(), "corners");
+        assertArrayEquals(expected.getFaceStarts(), actual.getFaceStarts(), "face starts");
+    }
+
+    private static void assertParsedLikeOBJParser(Path file, MappedOBJParser parser) {
+        OBJData expected = new OBJParser().parseFile(file.toString());
+        OBJData actual = parser.parseFile(file.toString()).toOBJData();
+
+        assertArrayEquals(vectors3(expected.getVertices()), vectors3(actual.getVertices()), "positions");
+        assertArrayEquals(vectors2(expected.getTextures()), vectors2(actual.getTextures()), "uvs");
+        assertArrayEquals(vectors3(expected.getNormals()), vectors3(actual.getNormals()), "normals");
+        assertArrayEquals(vectors4(expected.getVertexParams()), vectors4(actual.getVertexParams()), "vertex params");
+        assertArrayEquals(faces(expected.getSurfaces()), faces(actual.getSurfaces()), "faces");
+    }
+
+    private static float[] vectors2(List<Vector2f> vectors) {
+        float[] values = new float[vectors.size() * 2];
+        for (int i = 0; i < vectors.size(); i++) {
+            values[i * 2] = vectors.get(i).x;
+            values[i * 2 + 1] = vectors.get(i).y;
+        }
+        return values;
+    }
+
+    private static float[] vectors3(List<Vector3f> vectors) {
+        float[] values = new float[vectors.size() * 3];
+        for (int i = 0; i < vectors.size(); i++) {
+            values[i * 3] = vectors.get(i).x;
+            values[i * 3 + 1] = vectors.get(i).y;
+            values[i * 3 + 2] = vectors.get(i).z;
+        }
+        return values;
+    }
+
+    private static float[] vectors4(List<Vector4f> vectors) {
+        float[] values = new float[vectors.size() * 4];
+        for (int i = 0; i < vectors.size(); i++) {
+            values[i * 4] = vectors.get(i).x;
+            values[i * 4 + 1] = vectors.get(i).y;
+            values[i * 4 + 2] = vectors.get(i).z;
+            values[i * 4 + 3] = vectors.get(i).w;
+        }
+        return values;
+    }
+
+    /**
+     * Corner count of each face followed by vertex, uv and normal index of its corners.
+     */
+    private static int[] faces(List<List<Vector3i>> faces) {
+        return faces.stream()
+            .flatMapToInt(face -> Stream.concat(
+                    Stream.of(new int[]{face.size()}),
+                    face.stream().map(corner -> new int[]{corner.x, corner.y, corner.z}))
+                .flatMapToInt(Arrays::stream))
+            .toArray();
+    }
+}
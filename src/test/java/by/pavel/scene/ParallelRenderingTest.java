@@ -0,0 +1,134 @@
+package by.pavel.scene;
+
+import static by.pavel.scene.ColorUtil.colorOf;
+import static by.pavel.scene.ColorUtil.rgbaVec;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import by.pavel.asset.AssetManager;
+import by.pavel.math.Matrix4f;
+import by.pavel.math.Vector3f;
+import by.pavel.math.Vector4f;
+import by.pavel.texture.TextureFilter;
+
+/**
+ * Tiled rendering on several threads must draw exactly the image of the serial rasterizer.
+ */
+class ParallelRenderingTest {
+
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+    private static final Vector4f BOARD_COLOR = rgbaVec(colorOf(52, 122, 119, 255));
+    private static final Vector4f WHITE = rgbaVec(colorOf(255, 255, 255, 255));
+    private static final Vector4f BLACK = rgbaVec(colorOf(40, 40, 40, 255));
+    private static final List<LightSource> LIGHT_SOURCES =
+        List.of(new LightSource(WHITE, new Vector3f(0, 10, 10), 0.25f, 0.4f));
+
+    private static Model board;
+    private static Model checker;
+    private static Model sphere;
+    private static InstanceBatch checkers;
+
+    @BeforeAll
+    static void loadScene() {
+        System.setProperty("java.awt.headless", "true");
+        AssetManager assets = new AssetManager();
+        Vector3f zero = new Vector3f(0, 0, 0);
+        board = Model.load(
+            Matrix4f.translation(new Vector3f(0, -5, 4)),
+            Matrix4f.rotation(zero),
+            Matrix4f.scale(new Vector3f(10, 10, 10)),
+            assets,
+            "src/main/resources/checkers/CHESSBOARDG.obj",
+            "src/main/resources/checkers/chessboard.png",
+            null,
+            null);
+        checker = Model.load(
+            Matrix4f.translation(zero),
+            Matrix4f.rotation(new Vector3f(0, 3.1415f, 0)),
+            Matrix4f.scale(new Vector3f(0.005f, 0.005f, 0.005f)),
+            assets,
+            "src/main/resources/models/model4.obj",
+            null,
+            null,
+            null);
+        sphere = Model.load(
+            Matrix4f.translation(new Vector3f(0, -3.5f, 4)),
+            Matrix4f.rotation(zero),
+            Matrix4f.scale(new Vector3f(0.2f, 0.2f, 0.2f)),
+            assets,
+            "src/main/resources/sphere.obj",
+            null,
+            null,
+            null);
+        // the 24 checkers of a new game
+        float cell = 0.255f;
+        checkers = new InstanceBatch();
+        for (int y = 0; y < 8; y++) {
+            for (int x = 0; x < 8; x++) {
+                if ((x + y) % 2 == 1 && (y < 3 || y >= 5)) {
+                    Vector3f position = new Vector3f(0.9f - x * cell, -4.77f, 3 + y * cell);
+                    checkers.add(checker.instanceMatrix(checker.getRotation(), Matrix4f.translation(position)),
+                        y < 3 ? WHITE : BLACK);
+                }
+            }
+        }
+    }
+
+    static Stream<Arguments> modes() {
+        Stream.Builder<Arguments> modes = Stream.builder();
+        for (int threads : new int[] {2, 4, 8}) {
+            for (boolean deferred : new boolean[] {false, true}) {
+                for (TextureFilter filter : TextureFilter.values()) {
+                    modes.add(Arguments.of(threads, deferred, filter));
+                }
+            }
+        }
+        return modes.build();
+    }
+
+    @ParameterizedTest(name = "{0} threads, deferred {1}, {2}")
+    @MethodSource("modes")
+    void drawsTheSerialImageOnSeveralThreads(int threads, boolean deferred, TextureFilter filter) {
+        int[] serial = render(1, deferred, filter);
+        int[] parallel = render(threads, deferred, filter);
+
+        assertNotEquals(serial[0], serial[HEIGHT / 2 * WIDTH + WIDTH / 2], "scene is not in view");
+        assertArrayEquals(serial, parallel);
+    }
+
+    /**
+     * Draws two frames, so that the second one reuses the buffers and caches of the first.
+     */
+    private static int[] render(int threads, boolean deferred, TextureFilter filter) {
+        Screen screen = new Screen(WIDTH, HEIGHT, LIGHT_SOURCES, threads);
+        try {
+            // looks down at the middle of the board
+            screen.getCamera().setEye(new Vector3f(0, -3, 2));
+            screen.getCamera().setPitch(-45);
+            screen.setDeferredShading(deferred);
+            screen.setTextureFilter(filter);
+            for (int frame = 0; frame < 2; frame++) {
+                screen.clear();
+                screen.drawPhong(BOARD_COLOR, board);
+                screen.drawPhongInstanced(checker, checkers);
+                screen.drawStraight(WHITE, sphere);
+                screen.resolve();
+                screen.present();
+            }
+            BufferedImage image = screen.getPresentedImage();
+            return image.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH);
+        } finally {
+            screen.setRenderThreads(1);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package by.pavel.scene;
+
+import static by.pavel.Allocations.assertNoAllocations;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import by.pavel.math.Matrix4f;
+import by.pavel.math.Vector3f;
+import by.pavel.math.Vector4f;
+import by.pavel.parser.OBJData;
+import by.pavel.parser.OBJParser;
+import by.pavel.texture.TextureFilter;
+
+/**
+ * Drawing the same scene frame after frame must not allocate once the caches of the screen are warm.
+ */
+class ScreenAllocationTest {
+
+    private static final int FRAMES_PER_WINDOW = 5;
+
+    private final Vector4f white = new Vector4f(255, 255, 255, 255);
+    private final Vector4f red = new Vector4f(210, 40, 40, 255);
+    private final List<LightSource> lightSources = List.of(new LightSource(white, new Vector3f(0, 10, 0), 10, 0.4f));
+    private Model sphere;
+    private Model cube;
+    private InstanceBatch instances;
+
+    @BeforeAll
+    static void headless() {
+        System.setProperty("java.awt.headless", "true");
+    }
+
+    @BeforeEach
+    void loadScene() {
+        OBJParser parser = new OBJParser();
+        OBJData sphereData = parser.parseFile("src/main/resources/sphere.obj");
+        sphere = new Model(
+            Matrix4f.translation(new Vector3f(-1, 0, 5)),
+            Matrix4f.rotation(new Vector3f(0, 0, 0)),
+            Matrix4f.scale(new Vector3f(0.5f, 0.5f, 0.5f)),
+            sphereData.getVertices(),
+            sphereData.getNormals(),
+            sphereData.getSurfaces(),
+            null,
+            null,
+            null,
+            null);
+        OBJData cubeData = parser.parseFile("src/main/resources/cube.obj");
+        cube = new Model(
+            Matrix4f.translation(new Vector3f(1, 0, 5)),
+            Matrix4f.rotation(new Vector3f(0.5f, 0.7f, 0)),
+            Matrix4f.scale(new Vector3f(0.5f, 0.5f, 0.5f)),
+            cubeData.getVertices(),
+            cubeData.getNormals(),
+            cubeData.getSurfaces(),
+            cubeData.getTextures(),
+            "src/main/resources/stones.png",
+            "src/main/resources/NormalMap100.png",
+            null);
+        instances = new InstanceBatch();
+        for (int i = 0; i < 4; i++) {
+            instances.add(sphere.instanceMatrix(Matrix4f.rotation(new Vector3f(0, 0, 0)),
+                Matrix4f.translation(new Vector3f(i - 1.5f, -1, 6))), red);
+        }
+    }
+
+    @Test
+    void drawsFramesWithoutAllocating() {
+        assertFramesDoNotAllocate(new Screen(160, 120, lightSources, 1));
+    }
+
+    @Test
+    void drawsFramesWithoutAllocatingWithTextureFiltering() {
+        Screen screen = new Screen(160, 120, lightSources, 1);
+        screen.setTextureFilter(TextureFilter.TRILINEAR);
+
+        assertFramesDoNotAllocate(screen);
+    }
+
+    @Test
+    void drawsFramesWithoutAllocatingInDeferredMode() {
+        Screen screen = new Screen(160, 120, lightSources, 1);
+        screen.setDeferredShading(true);
+
+        assertFramesDoNotAllocate(screen);
+    }
+
+    @Test
+    void drawsFramesWithoutAllocatingOnSeveralThreads() {
+        Screen screen = new Screen(160, 120, lightSources, 3);
+        screen.setTextureFilter(TextureFilter.TRILINEAR);
+
+        assertFramesDoNotAllocate(screen);
+    }
+
+    @Test
+    void drawsFramesWithoutAllocatingInDeferredModeOnSeveralThreads() {
+        Screen screen = new Screen(160, 120, lightSources, 3);
+        screen.setDeferredShading(true);
+
+        assertFramesDoNotAllocate(screen);
+    }
+
+    /**
+     * Counts the render threads of the screen as well, then shuts them down.
+     */
+    private void assertFramesDoNotAllocate(Screen screen) {
+        try {
+            assertNoAllocations("render-worker-", FRAMES_PER_WINDOW, () -> drawFrame(screen));
+        } finally {
+            screen.setRenderThreads(1);
+        }
+    }
+
+    private void drawFrame(Screen screen) {
+        screen.clear();
+        screen.drawPhong(white, cube);
+        screen.drawPhongInstanced(sphere, instances);
+        screen.drawStraight(red, sphere);
+        screen.resolve();
+        screen.present();
+    }
+}
@@ -0,0 +1,67 @@
+package by.pavel.shader;
+
+import static by.pavel.Allocations.assertNoAllocations;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import by.pavel.math.Vector3f;
+import by.pavel.math.Vector4f;
+import by.pavel.scene.LightSource;
+
+/**
+ * Shaders run for every pixel, so shading a pixel must not allocate once the shader is warm.
+ */
+class PixelShaderAllocationTest {
+
+    private static final int PIXELS_PER_WINDOW = 10_000;
+
+    private final List<LightSource> lightSources = List.of(
+        new LightSource(new Vector4f(255, 255, 255, 255), new Vector3f(0, 10, 0), 10, 0.4f),
+        new LightSource(new Vector4f(40, 40, 255, 255), new Vector3f(5, 0, -5), 2, 0.8f));
+    private final Vector3f cameraPosition = new Vector3f(0, 0, 0);
+    private final PixelData pixelData = new PixelData();
+    private int pixel;
+    private int colors;
+
+    @Test
+    void phongShadesWithoutAllocating() {
+        PixelShader shader = new CalcPhongPixelShader(lightSources, 0.7f);
+
+        assertNoAllocations(PIXELS_PER_WINDOW, () -> shade(shader));
+    }
+
+    @Test
+    void specularMapPhongShadesWithoutAllocating() {
+        PixelShader shader = new SpecularMapPhongPixelShader(lightSources, 0.7f);
+
+        assertNoAllocations(PIXELS_PER_WINDOW, () -> shade(shader));
+    }
+
+    @Test
+    void textureShadesWithoutAllocating() {
+        PixelShader shader = new TexturePixelShader();
+
+        assertNoAllocations(PIXELS_PER_WINDOW, () -> shade(shader));
+    }
+
+    /**
+     * Shades a pixel of a sphere in front of the camera, a different one every time.
+     */
+    private void shade(PixelShader shader) {
+        pixel++;
+        float angle = pixel * 0.001f;
+        pixelData.normalX = (float) Math.sin(angle);
+        pixelData.normalY = (float) Math.cos(angle * 3);
+        pixelData.normalZ = -(float) Math.cos(angle);
+        pixelData.positionX = pixelData.normalX;
+        pixelData.positionY = pixelData.normalY;
+        pixelData.positionZ = 5 + pixelData.normalZ;
+        pixelData.red = pixel & 0xff;
+        pixelData.green = 128;
+        pixelData.blue = 64;
+        pixelData.specularCoefficient = (pixel & 0xf) / 15f;
+        colors += shader.getPixelColor(cameraPosition, pixelData);
+    }
+}
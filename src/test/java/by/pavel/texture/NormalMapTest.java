@@ -0,0 +1,45 @@
+package by.pavel.texture;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import org.junit.jupiter.api.Test;
+
+class NormalMapTest {
+
+    private static final float EPSILON = 1e-6f;
+    private static final float HALF_SQRT2 = (float) Math.sqrt(0.5);
+
+    private final NormalMap normalMap = new NormalMap(2, 1, new float[] {1, 0, 0, 0, 0, 1});
+    private final float[] result = new float[3];
+
+    @Test
+    void normalizesTheAveragedNormalsOfTheNextLevel() {
+        normalMap.sample(0.5f, 0.5f, 1, TextureFilter.BILINEAR, result);
+
+        assertArrayEquals(new float[] {HALF_SQRT2, 0, HALF_SQRT2}, result, EPSILON);
+    }
+
+    @Test
+    void leavesFilteredNormalsUnnormalized() {
+        normalMap.sample(0.5f, 0.5f, 0, TextureFilter.BILINEAR, result);
+
+        assertArrayEquals(new float[] {0.5f, 0, 0.5f}, result, EPSILON);
+    }
+
+    @Test
+    void blendsTheTwoLevelsAroundTheLevelOfDetail() {
+        normalMap.sample(0.25f, 0.5f, 0.5f, TextureFilter.TRILINEAR, result);
+
+        assertArrayEquals(new float[] {0.5f + HALF_SQRT2 / 2, 0, HALF_SQRT2 / 2}, result, EPSILON);
+    }
+
+    @Test
+    void clampsOrWrapsAtTheEdges() {
+        normalMap.sample(0, 0.5f, 0, TextureFilter.BILINEAR, result);
+        assertArrayEquals(new float[] {1, 0, 0}, result, EPSILON);
+
+        normalMap.setWrap(TextureWrap.REPEAT);
+        normalMap.sample(0, 0.5f, 0, TextureFilter.BILINEAR, result);
+        assertArrayEquals(new float[] {0.5f, 0, 0.5f}, result, EPSILON);
+    }
+}
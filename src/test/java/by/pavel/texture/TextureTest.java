@@ -0,0 +1,122 @@
+package by.pavel.texture;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class TextureTest {
+
+    @Test
+    void halvesEveryLevelDownToOneTexel() {
+        Texture texture = new Texture(8, 2, new int[16]);
+
+        assertEquals(4, texture.getLevels());
+        assertArrayEquals(new int[] {8, 4, 2, 1}, texture.levelWidths);
+        assertArrayEquals(new int[] {2, 1, 1, 1}, texture.levelHeights);
+    }
+
+    @Test
+    void averagesTwoByTwoTexelsIntoTheNextLevel() {
+        Texture texture = new Texture(4, 4, new int[] {
+            grey(0), grey(40), grey(200), grey(200),
+            grey(80), grey(120), grey(100), grey(100),
+            grey(10), grey(10), grey(0), grey(0),
+            grey(10), grey(10), grey(40), grey(40)
+        });
+
+        // centres of the 2x2 texels of level 1
+        assertEquals(grey(60), texture.sample(0.25f, 0.75f, 1, TextureFilter.BILINEAR));
+        assertEquals(grey(150), texture.sample(0.75f, 0.75f, 1, TextureFilter.BILINEAR));
+        assertEquals(grey(10), texture.sample(0.25f, 0.25f, 1, TextureFilter.BILINEAR));
+        assertEquals(grey(20), texture.sample(0.75f, 0.25f, 1, TextureFilter.BILINEAR));
+        assertEquals(grey(60), texture.sample(0.3f, 0.6f, 2, TextureFilter.BILINEAR));
+    }
+
+    @Test
+    void levelOfDetailIsNegativeWhenMagnifiedAndPositiveWhenMinified() {
+        Texture texture = new Texture(256, 256, new int[256 * 256]);
+
+        assertEquals(-1, texture.lod(1 / 512f, 0, 0, 1 / 512f));
+        assertEquals(0, texture.lod(1 / 256f, 0, 0, 1 / 256f));
+        assertEquals(2, texture.lod(4 / 256f, 0, 0, 1 / 256f));
+        assertEquals(3, texture.lod(0, 1 / 256f, 0, 8 / 256f));
+    }
+
+    @Test
+    void bilinearSamplingBlendsTheFourClosestTexels() {
+        Texture texture = new Texture(2, 2, new int[] {
+            grey(0), grey(200),
+            grey(100), grey(40)
+        });
+
+        assertEquals(grey(0), texture.sample(0.25f, 0.75f, 0, TextureFilter.BILINEAR));
+        assertEquals(grey(100), texture.sample(0.5f, 0.75f, 0, TextureFilter.BILINEAR));
+        assertEquals(grey(50), texture.sample(0.375f, 0.75f, 0, TextureFilter.BILINEAR));
+        assertEquals(grey(85), texture.sample(0.5f, 0.5f, 0, TextureFilter.BILINEAR));
+        // the closest level to lod 0.6 is level 1, the average of all four texels
+        assertEquals(grey(85), texture.sample(0.25f, 0.75f, 0.6f, TextureFilter.BILINEAR));
+    }
+
+    @Test
+    void trilinearSamplingBlendsTheTwoLevelsAroundTheLevelOfDetail() {
+        Texture texture = new Texture(2, 2, new int[] {
+            grey(0), grey(100),
+            grey(100), grey(200)
+        });
+
+        assertEquals(grey(0), texture.sample(0.25f, 0.75f, -1, TextureFilter.TRILINEAR));
+        assertEquals(grey(0), texture.sample(0.25f, 0.75f, 0, TextureFilter.TRILINEAR));
+        assertEquals(grey(25), texture.sample(0.25f, 0.75f, 0.25f, TextureFilter.TRILINEAR));
+        assertEquals(grey(50), texture.sample(0.25f, 0.75f, 0.5f, TextureFilter.TRILINEAR));
+        assertEquals(grey(100), texture.sample(0.25f, 0.75f, 1, TextureFilter.TRILINEAR));
+        assertEquals(grey(100), texture.sample(0.25f, 0.75f, 5, TextureFilter.TRILINEAR));
+    }
+
+    @Test
+    void clampsToTheEdgeTexels() {
+        Texture texture = new Texture(2, 1, new int[] {grey(0), grey(200)});
+
+        assertEquals(grey(0), texture.sample(0, 0.5f, 0, TextureFilter.BILINEAR));
+        assertEquals(grey(0), texture.sample(-3, 0.5f, 0, TextureFilter.BILINEAR));
+        assertEquals(grey(200), texture.sample(1, 0.5f, 0, TextureFilter.BILINEAR));
+        assertEquals(grey(200), texture.sample(1.25f, 0.5f, 0, TextureFilter.NEAREST));
+    }
+
+    @Test
+    void wrapsAroundTheEdges() {
+        Texture texture = new Texture(2, 1, new int[] {grey(0), grey(200)});
+        texture.setWrap(TextureWrap.REPEAT);
+
+        assertEquals(grey(100), texture.sample(0, 0.5f, 0, TextureFilter.BILINEAR));
+        assertEquals(grey(100), texture.sample(1, 0.5f, 0, TextureFilter.BILINEAR));
+        assertEquals(grey(0), texture.sample(-1.75f, 0.5f, 0, TextureFilter.BILINEAR));
+        assertEquals(grey(0), texture.sample(1.25f, 0.5f, 0, TextureFilter.NEAREST));
+    }
+
+    @Test
+    void tiledLayoutSamplesLikeTheLinearOne() {
+        Random random = new Random(7);
+        int[] texels = new int[13 * 7];
+        for (int i = 0; i < texels.length; i++) {
+            texels[i] = random.nextInt();
+        }
+        Texture linear = new Texture(13, 7, texels, TextureLayout.LINEAR);
+        Texture tiled = new Texture(13, 7, texels, TextureLayout.TILED);
+
+        for (TextureFilter filter : TextureFilter.values()) {
+            for (int i = 0; i < 1000; i++) {
+                float u = random.nextFloat() * 1.2f - 0.1f;
+                float v = random.nextFloat() * 1.2f - 0.1f;
+                float lod = random.nextFloat() * 5 - 1;
+                assertEquals(linear.sample(u, v, lod, filter), tiled.sample(u, v, lod, filter));
+            }
+        }
+    }
+
+    private static int grey(int value) {
+        return 0xff000000 | value << 16 | value << 8 | value;
+    }
+}